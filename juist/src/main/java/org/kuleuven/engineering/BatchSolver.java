@@ -0,0 +1,97 @@
+package org.kuleuven.engineering;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.kuleuven.engineering.dataReading.DataReader;
+
+// solves every .json instance in a directory on a fixed number of threads, each instance gets its own warehouse,
+// its own schedule file <name>.txt in the output directory and a line in summary.csv
+public class BatchSolver {
+    public record Result(String instance, int makespan, int moves, long timeMs, String error) {}
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) throw new Exception("Usage: BatchSolver <instance directory> <output directory> [threads] [cache directory]");
+        File inputDirectory = new File(args[0]);
+        File outputDirectory = new File(args[1]);
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        Path cacheDirectory = args.length > 3 && !args[3].equals("-") ? Path.of(args[3]) : null;
+
+        File[] files = inputDirectory.listFiles((dir, name) -> name.endsWith(".json"));
+        if (files == null) throw new Exception("Directory doesn't exist");
+        Arrays.sort(files, Comparator.comparing(File::getName));
+        if (!outputDirectory.exists() && !outputDirectory.mkdirs()) throw new Exception("Can't create output directory");
+
+        List<Result> results = solveAll(Arrays.asList(files), outputDirectory, threads, cacheDirectory);
+        writeSummary(results, new File(outputDirectory, "summary.csv"));
+    }
+
+    public static List<Result> solveAll(List<File> files, File outputDirectory, int threads, Path cacheDirectory) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        List<Future<Result>> futures = new ArrayList<>();
+        for (File f : files) {
+            futures.add(pool.submit(() -> solve(f, outputDirectory, cacheDirectory)));
+        }
+        pool.shutdown();
+
+        // results in the same order as the files
+        List<Result> results = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            try {
+                Result result = futures.get(i).get();
+                results.add(result);
+                System.out.println(result.instance() + ": " + (result.error() == null ? "makespan " + result.makespan() + ", " + result.moves() + " moves, " + result.timeMs() + " ms" : result.error()));
+            } catch (Exception e) {
+                results.add(new Result(instanceName(files.get(i)), -1, -1, -1, e.toString()));
+                System.out.println(e);
+            }
+        }
+        return results;
+    }
+
+    private static Result solve(File f, File outputDirectory, Path cacheDirectory) {
+        String instance = instanceName(f);
+        long start = System.currentTimeMillis();
+        try {
+            Warehouse warehouse = DataReader.read(f.getPath(), cacheDirectory);
+            warehouse.setVerbose(false);
+            warehouse.scheduleRequests();
+            long time = System.currentTimeMillis() - start;
+            warehouse.writeOperationLog(new File(outputDirectory, instance + ".txt").getPath());
+            return new Result(instance, warehouse.getMakespan(), warehouse.getMoveCount(), time, null);
+        } catch (IOException e) {
+            // there is no schedule file, so the summary has no makespan for it either
+            return new Result(instance, -1, -1, System.currentTimeMillis() - start, "schedule not written: " + e);
+        } catch (Exception e) {
+            return new Result(instance, -1, -1, System.currentTimeMillis() - start, e.toString());
+        }
+    }
+
+    private static String instanceName(File f) {
+        String name = f.getName();
+        return name.endsWith(".json") ? name.substring(0, name.length() - 5) : name;
+    }
+
+    private static void writeSummary(List<Result> results, File out) {
+        StringBuilder output = new StringBuilder("instance,makespan,moves,time_ms,error\n");
+        for (Result result : results) {
+            String error = result.error() == null ? "" : "\"" + result.error().replace("\"", "\"\"") + "\"";
+            output.append(result.instance()).append(',').append(result.makespan()).append(',').append(result.moves())
+                    .append(',').append(result.timeMs()).append(',').append(error).append('\n');
+        }
+        try (FileWriter fw = new FileWriter(out)) {
+            fw.write(output.toString());
+        } catch (Exception e) {
+            System.out.println(e);
+        }
+    }
+}
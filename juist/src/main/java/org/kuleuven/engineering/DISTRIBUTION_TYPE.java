@@ -0,0 +1,8 @@
+package org.kuleuven.engineering;
+
+// how RequestDistribution hands the stacks of a strategy to the vehicles
+public enum DISTRIBUTION_TYPE{
+    ROUND_ROBIN,
+    COST_AWARE,
+    CLUSTERED
+}
@@ -0,0 +1,162 @@
+package org.kuleuven.engineering;
+
+import java.util.ArrayList;
+import java.util.EmptyStackException;
+import java.util.List;
+import java.util.Random;
+
+import org.kuleuven.engineering.scheduling.ScheduleEvaluator;
+import org.kuleuven.engineering.types.InvalidMoveException;
+import org.kuleuven.engineering.types.Request;
+import org.kuleuven.engineering.types.Vehicle;
+
+// improvement phase after the constructive schedule. the schedule is simulated with checkpoints (paused forks of the warehouse),
+// destroy: at a checkpoint, take the pending requests of one vehicle for one stack out of its list,
+// repair: give them to another vehicle (or put them elsewhere in the same list) and let the strategies simulate the rest.
+// a change is kept if the schedule is complete and has a lower makespan, worse ones are cancelled as soon as they can't win
+public class LargeNeighbourhoodSearch {
+    private static final int CHECKPOINTS = 20;
+
+    private final Random random;
+    // time between checkpoints, set by the first run
+    private double interval = 1;
+    private int iterations = 0;
+    private int improvements = 0;
+
+    // a simulated schedule: the finished warehouse and the paused copies it went through
+    private record Trajectory(List<Warehouse> checkpoints, Warehouse result) {}
+
+    public LargeNeighbourhoodSearch(long seed) {
+        this.random = new Random(seed);
+    }
+
+    // the warehouse must not be scheduled yet, the best finished warehouse is returned
+    public Warehouse improve(Warehouse warehouse, long budgetMs) {
+        long deadline = System.currentTimeMillis() + budgetMs;
+        boolean verbose = warehouse.isVerbose();
+        warehouse.setVerbose(false);
+        Warehouse start = warehouse.fork();
+
+        Trajectory best = firstRun(warehouse);
+
+        while (System.currentTimeMillis() < deadline) {
+            iterations++;
+            int c = random.nextInt(best.checkpoints().size());
+            Warehouse candidate = best.checkpoints().get(c).fork();
+            if (!destroyAndRepair(candidate, criticalVehicle(best.result()))) continue;
+            candidate.setMakespanBound(best.result().getMakespan());
+            try {
+                Trajectory trajectory = simulate(best.checkpoints().subList(0, c + 1), candidate);
+                Warehouse result = trajectory.result();
+                if (result.isFinished() && !result.isCancelled() && result.isComplete()) {
+                    best = trajectory;
+                    improvements++;
+                }
+            } catch (InvalidMoveException | EmptyStackException e) {
+                // the changed request order led to an impossible move, drop it
+            }
+        }
+
+        Warehouse result = best.result();
+        // the same operations, but every vehicle leaves as soon as it is free and the stack will be when it gets there
+        ScheduleEvaluator evaluator = new ScheduleEvaluator(start, result.getOperations());
+        if (evaluator.isFeasible() && evaluator.getMakespan() < result.getMakespan()) result.retime(evaluator.getSchedule());
+        result.setMakespanBound(Integer.MAX_VALUE);
+        result.setVerbose(verbose);
+        if (verbose) System.out.println("improvement: " + improvements + " of " + iterations + " changes kept, makespan " + result.getMakespan());
+        return result;
+    }
+
+    // the makespan isn't known yet, so the checkpoints start one loading duration apart. whenever there are twice as many as needed,
+    // every other one is dropped and the interval doubles. the first checkpoint is the start, when the requests were just handed out
+    private Trajectory firstRun(Warehouse warehouse) {
+        interval = Math.max(1, warehouse.getLoadingSpeed());
+        warehouse.scheduleUntil(0);
+        List<Warehouse> checkpoints = new ArrayList<>();
+        checkpoints.add(warehouse.fork());
+        while (!warehouse.isFinished() && !warehouse.isCancelled()) {
+            warehouse.scheduleUntil(warehouse.getCurrentTime() + interval);
+            if (warehouse.isFinished() || warehouse.isCancelled()) break;
+            checkpoints.add(warehouse.fork());
+            if (checkpoints.size() > 2 * CHECKPOINTS) {
+                List<Warehouse> kept = new ArrayList<>();
+                for (int i = 0; i < checkpoints.size(); i += 2) kept.add(checkpoints.get(i));
+                checkpoints = kept;
+                interval *= 2;
+            }
+        }
+        return new Trajectory(checkpoints, warehouse);
+    }
+
+    // runs the warehouse to the end, a copy is kept every interval
+    private Trajectory simulate(List<Warehouse> checkpointsBefore, Warehouse warehouse) {
+        List<Warehouse> checkpoints = new ArrayList<>(checkpointsBefore);
+        while (!warehouse.isFinished() && !warehouse.isCancelled()) {
+            warehouse.scheduleUntil(warehouse.getCurrentTime() + interval);
+            if (warehouse.isFinished() || warehouse.isCancelled()) break;
+            checkpoints.add(warehouse.fork());
+        }
+        return new Trajectory(checkpoints, warehouse);
+    }
+
+    // the vehicle that finishes last
+    int criticalVehicle(Warehouse warehouse) {
+        int critical = 0;
+        for (Vehicle vehicle : warehouse.getVehicles()) {
+            if (vehicle.getUnavailableUntil() > warehouse.getVehicle(critical).getUnavailableUntil()) critical = vehicle.getIndex();
+        }
+        return critical;
+    }
+
+    // also used by the rolling horizon replanning, the changed lists are its next tentative plan
+    boolean destroyAndRepair(Warehouse warehouse, int critical) {
+        List<Vehicle> vehicles = warehouse.getVehicles();
+        // mostly take work away from the vehicle that finished last
+        Vehicle source = random.nextBoolean() ? warehouse.getVehicle(critical) : vehicles.get(random.nextInt(vehicles.size()));
+        List<List<Request>> sourceGroups = groups(source);
+        if (sourceGroups.isEmpty()) return false;
+        int g = random.nextInt(sourceGroups.size());
+        // a vehicle that still has to pick up another box is on its way to its first group, it keeps it (like stealFor does)
+        if (g == 0 && warehouse.getFirstGetAnother()[source.getIndex()]) return false;
+        List<Request> group = sourceGroups.get(g);
+
+        Vehicle target = source;
+        if (vehicles.size() > 1 && random.nextInt(4) != 0) {
+            target = vehicles.get(random.nextInt(vehicles.size() - 1));
+            if (target == source) target = vehicles.get(vehicles.size() - 1);
+        }
+        if (target == source && sourceGroups.size() < 2) return false;
+
+        source.removeRequests(group);
+        // only between groups, the order within a group (stack depth) stays as the strategy made it
+        List<List<Request>> targetGroups = groups(target);
+        int boundary = random.nextInt(targetGroups.size() + 1);
+        int position = 0;
+        for (int i = 0; i < boundary; i++) {
+            position += targetGroups.get(i).size();
+        }
+        target.insertRequests(position, group);
+        return true;
+    }
+
+    // consecutive pending requests on the same stack (pickup stack, or place stack for requests that come from a buffer)
+    private List<List<Request>> groups(Vehicle vehicle) {
+        List<List<Request>> groups = new ArrayList<>();
+        int previousKey = -1;
+        for (Request request : vehicle.getRequests()) {
+            int key = request.getPickupLocation().isBuffer() ? request.getPlaceLocation().getIndex() : request.getPickupLocation().getIndex();
+            if (groups.isEmpty() || key != previousKey) groups.add(new ArrayList<>());
+            groups.getLast().add(request);
+            previousKey = key;
+        }
+        return groups;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    public int getImprovements() {
+        return improvements;
+    }
+}
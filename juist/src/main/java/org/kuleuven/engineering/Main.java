@@ -10,8 +10,13 @@ public class Main {
         String fileName = args[0];
         File f = new File(fileName);
         if(!f.exists()) throw new Exception("File doesn't exist");
-        Warehouse warehouse = DataReader.read(f.getPath());
-        warehouse.scheduleRequests();
+        // optional third argument: directory to cache travel time matrices in ("-" for none)
+        Path cacheDirectory = args.length > 2 && !args[2].equals("-") ? Path.of(args[2]) : null;
+        // optional fourth argument: milliseconds to spend improving the schedule after it is built
+        long improvementTime = args.length > 3 ? Long.parseLong(args[3]) : 0;
+        Warehouse warehouse = DataReader.read(f.getPath(), cacheDirectory);
+        if (improvementTime > 0) warehouse = new LargeNeighbourhoodSearch(0).improve(warehouse, improvementTime);
+        else warehouse.scheduleRequests();
         warehouse.writeOperationLog(args[1]);
     }
 }
@@ -0,0 +1,71 @@
+package org.kuleuven.engineering;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.file.Path;
+
+import org.json.JSONObject;
+import org.kuleuven.engineering.dataReading.DataReader;
+import org.kuleuven.engineering.dataReading.JsonParser;
+import org.kuleuven.engineering.types.Request;
+
+// online mode: the instance gives the layout, the vehicles and the requests known at the start, more requests come in as json lines on stdin:
+//   {"ID": 7, "boxID": "B3", "pickupLocation": "stack3", "placeLocation": "BufferPoint0", "time": 1200}
+// the schedule runs on to the (simulated) time of the line and the request is handed to the running strategy, without starting over.
+// a line with only a time moves the clock on, a request without a time comes in at the current time.
+// every operation is written to stdout as soon as it is planned, at the end of the input the rest is scheduled
+public class OnlineScheduler {
+    private final Warehouse warehouse;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) throw new Exception("Usage: OnlineScheduler <instance> [output file] [cache directory]");
+        Path cacheDirectory = args.length > 2 && !args[2].equals("-") ? Path.of(args[2]) : null;
+        Warehouse warehouse = DataReader.read(args[0], cacheDirectory);
+        if (warehouse == null) throw new Exception("File doesn't exist");
+
+        OnlineScheduler scheduler = new OnlineScheduler(warehouse, System.out);
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.isBlank()) continue;
+            try {
+                scheduler.handle(JsonParser.parseString(line));
+            } catch (Exception e) {
+                // stdout is the operation stream
+                System.err.println(e);
+            }
+        }
+        scheduler.finish();
+        if (args.length > 1) warehouse.writeOperationLog(args[1]);
+    }
+
+    public OnlineScheduler(Warehouse warehouse, PrintStream out) {
+        this.warehouse = warehouse;
+        warehouse.setVerbose(false);
+        warehouse.setOperationListener(out::println);
+        // the requests of the instance itself are planned right away
+        warehouse.scheduleUntil(0);
+    }
+
+    public void handle(JSONObject line) {
+        if (line.has("time")) warehouse.advanceTo(line.getDouble("time"));
+        if (!line.has("ID")) return;
+        Request request = DataReader.readRequest(line, warehouse.getGraph().nodeMap, warehouse.getRequestCount(), warehouse.getBoxIds());
+        if (request.getPickupLocation() == null || request.getPlaceLocation() == null) {
+            throw new IllegalArgumentException("Unknown location in request " + request.getID());
+        }
+        warehouse.addRequest(request);
+    }
+
+    // no more requests: schedule what is left, requests that came in during the last strategies get one more round.
+    // a schedule that leaves a box away from its place location is not valid and is not written
+    public void finish() {
+        warehouse.continueScheduling();
+        if (!warehouse.getRequests().isEmpty()) {
+            warehouse.restartStrategies();
+            warehouse.continueScheduling();
+        }
+        if (!warehouse.isComplete()) throw new IllegalStateException("online schedule is not complete");
+    }
+}
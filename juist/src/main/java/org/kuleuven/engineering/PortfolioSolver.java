@@ -0,0 +1,118 @@
+package org.kuleuven.engineering;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.json.JSONObject;
+import org.kuleuven.engineering.dataReading.DataReader;
+import org.kuleuven.engineering.scheduling.STRATEGY_TYPE;
+
+// schedules one instance with several strategy orders at the same time and keeps the schedule with the lowest makespan.
+// when a schedule finishes, every other run is bounded by its makespan and stops as soon as it can't do better
+public class PortfolioSolver {
+    // buffer to stack has to stay last: stack to buffer relocations would otherwise move boxes that were already placed
+    public static final List<List<STRATEGY_TYPE>> DEFAULT_PORTFOLIO = List.of(
+            Warehouse.DEFAULT_STRATEGIES,
+            List.of(STRATEGY_TYPE.STACK_TO_BUFFER, STRATEGY_TYPE.BUFFER_TO_STACK)
+    );
+    public static final long DEFAULT_TIME_LIMIT_MS = 600_000;
+
+    private final List<Warehouse> running = new ArrayList<>();
+    private Warehouse best = null;
+    private List<STRATEGY_TYPE> bestOrder = null;
+    private DISTRIBUTION_TYPE bestDistribution = null;
+    // set when the time limit is reached, runs that start after that are cancelled right away
+    private boolean timedOut = false;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) throw new Exception("Usage: PortfolioSolver <instance> <output file> [threads] [cache directory] [time limit ms]");
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        Path cacheDirectory = args.length > 3 && !args[3].equals("-") ? Path.of(args[3]) : null;
+        long timeLimit = args.length > 4 ? Long.parseLong(args[4]) : DEFAULT_TIME_LIMIT_MS;
+
+        JSONObject instance = DataReader.readJson(args[0]);
+        if (instance == null) throw new Exception("File doesn't exist");
+        PortfolioSolver solver = new PortfolioSolver();
+        Warehouse best = solver.solve(instance, DEFAULT_PORTFOLIO, threads, cacheDirectory, timeLimit);
+        if (best == null) throw new Exception("No strategy order gave a complete schedule");
+        System.out.println("best strategy order: " + solver.getBestOrder() + ", " + solver.getBestDistribution() + " distribution, makespan " + best.getMakespan());
+        best.writeOperationLog(args[1]);
+    }
+
+    // runs that are still going after the time limit (in ms) are cancelled, the best complete schedule so far is returned
+    public Warehouse solve(JSONObject instance, List<List<STRATEGY_TYPE>> portfolio, int threads, Path cacheDirectory, long timeLimit) throws InterruptedException {
+        long now = System.currentTimeMillis();
+        long deadline = now + Math.min(timeLimit, Long.MAX_VALUE - now);
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, DISTRIBUTION_TYPE.values().length * portfolio.size())));
+        List<Future<?>> futures = new ArrayList<>();
+        // every order with every way of distributing the requests
+        for (List<STRATEGY_TYPE> order : portfolio) {
+            for (DISTRIBUTION_TYPE distribution : DISTRIBUTION_TYPE.values()) {
+                futures.add(pool.submit(() -> run(instance, order, distribution, cacheDirectory)));
+            }
+        }
+        pool.shutdown();
+        for (Future<?> future : futures) {
+            try {
+                try {
+                    future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    cancelRunning();
+                    future.get();
+                }
+            } catch (Exception e) {
+                System.out.println(e);
+            }
+        }
+        return best;
+    }
+
+    private void run(JSONObject instance, List<STRATEGY_TYPE> order, DISTRIBUTION_TYPE distribution, Path cacheDirectory) {
+        Warehouse warehouse = DataReader.read(instance, cacheDirectory, order);
+        warehouse.setVerbose(false);
+        warehouse.setDistributionType(distribution);
+        synchronized (this) {
+            if (best != null) warehouse.setMakespanBound(best.getMakespan());
+            if (timedOut) warehouse.setMakespanBound(0);
+            running.add(warehouse);
+        }
+        warehouse.scheduleRequests();
+        finished(warehouse, order, distribution);
+    }
+
+    private synchronized void finished(Warehouse warehouse, List<STRATEGY_TYPE> order, DISTRIBUTION_TYPE distribution) {
+        running.remove(warehouse);
+        if (warehouse.isCancelled() || !warehouse.isComplete()) return;
+        // a run that only ties with the best one is cancelled (or rejected here), the first to reach a makespan keeps it
+        if (best == null || warehouse.getMakespan() < best.getMakespan()) {
+            best = warehouse;
+            bestOrder = order;
+            bestDistribution = distribution;
+            for (Warehouse other : running) {
+                other.setMakespanBound(best.getMakespan());
+            }
+        }
+    }
+
+    // a bound of 0 can't be beaten, the runs stop at their next check
+    private synchronized void cancelRunning() {
+        timedOut = true;
+        for (Warehouse warehouse : running) {
+            warehouse.setMakespanBound(0);
+        }
+    }
+
+    public List<STRATEGY_TYPE> getBestOrder() {
+        return bestOrder;
+    }
+
+    public DISTRIBUTION_TYPE getBestDistribution() {
+        return bestDistribution;
+    }
+}
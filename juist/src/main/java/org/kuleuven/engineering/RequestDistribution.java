@@ -1,35 +1,63 @@
 package org.kuleuven.engineering;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 
+import org.kuleuven.engineering.graph.Graph;
+import org.kuleuven.engineering.graph.GraphNode;
+import org.kuleuven.engineering.types.Location;
 import org.kuleuven.engineering.types.Request;
 import org.kuleuven.engineering.types.Stack;
+import org.kuleuven.engineering.types.StackReservations;
 import org.kuleuven.engineering.types.Vehicle;
 
 
 public class RequestDistribution {
     private final List<Vehicle> vehicles;
     private final List<List<Request>> requestsPerVehicleList;
+    private final Graph graph;
+    private final int loadingSpeed;
+    private DISTRIBUTION_TYPE distributionType = DISTRIBUTION_TYPE.ROUND_ROBIN;
+    // per vehicle: the first tick at which a stack its last steal was refused for (still booked on arrival) is free, infinity if none
+    private final double[] stealRetryTimes;
 
-    public RequestDistribution(List<Vehicle> vehicles, List<List<Request>> requestsPerVehicleList) {
+    // the requests of one stack
+    private record StackGroup(GraphNode stack, List<Request> requests) {}
+
+    public RequestDistribution(List<Vehicle> vehicles, List<List<Request>> requestsPerVehicleList, Graph graph, int loadingSpeed) {
         this.vehicles = vehicles;
         this.requestsPerVehicleList = requestsPerVehicleList;
+        this.graph = graph;
+        this.loadingSpeed = loadingSpeed;
+        this.stealRetryTimes = new double[vehicles.size()];
+        Arrays.fill(stealRetryTimes, Double.POSITIVE_INFINITY);
     }
 
-    // distribute requests over vehicles based on stack load    
+    // distribute requests over vehicles based on stack load, the requests of one stack stay together
     public void distributeRequests(List<Request> requestList, boolean usePickupLocation) {
-        HashMap<Integer, Integer> stackLoad = calculateStackLoad(requestList, usePickupLocation);
         int requestsPerVehicle = (requestList.size() / vehicles.size()) + 1;
         initializeRequestsPerVehicleList();
 
-        // sort stackIDs based on stackLoad size
-        List<Integer> stackIDs = new ArrayList<>(stackLoad.keySet());
-        stackIDs.sort((s1, s2) -> stackLoad.get(s2).compareTo(stackLoad.get(s1)));
+        // group the requests per stack in one pass, in the order of the request list
+        HashMap<Integer, StackGroup> requestsPerStack = new HashMap<>();
+        for (Request request : requestList) {
+            GraphNode stackNode = usePickupLocation ? request.getPickupLocation() : request.getPlaceLocation();
+            requestsPerStack.computeIfAbsent(stackNode.getStorage().getID(), k -> new StackGroup(stackNode, new ArrayList<>())).requests().add(request);
+        }
+        // sort the stacks based on their number of requests, biggest first
+        List<StackGroup> groups = new ArrayList<>(requestsPerStack.values());
+        groups.sort((g1, g2) -> Integer.compare(g2.requests().size(), g1.requests().size()));
 
         // create lists of requests for each vehicle
-        createVehicleRequestLists(requestList, usePickupLocation, requestsPerVehicle, stackIDs);
+        switch (distributionType) {
+            case ROUND_ROBIN -> createVehicleRequestLists(groups, requestsPerVehicle);
+            case COST_AWARE -> createVehicleRequestListsByCost(groups, usePickupLocation);
+            case CLUSTERED -> createVehicleRequestListsByRegion(groups, usePickupLocation);
+        }
 
         // give each vehicle its requests
         for (int i = 0; i < vehicles.size(); i++) {
@@ -37,18 +65,84 @@ public class RequestDistribution {
         }
     }
 
-    // returns a map with the stack id as key and the number of requests for that stack as value
-    private HashMap<Integer, Integer> calculateStackLoad(List<Request> requestList, boolean usePickupLocation) {
-        HashMap<Integer, Integer> stackLoad = new HashMap<>();
-        for (Request request : requestList) {
-            Stack stack = (Stack) (usePickupLocation ?
-                request.getPickupLocation().getStorage() :
-                request.getPlaceLocation().getStorage());
+    // online: the vehicle for a request that comes in while a strategy is running. the requests of one stack stay with one vehicle
+    // (like createVehicleRequestLists does), a request for a stack no vehicle works on goes to the vehicle with the least requests
+    public Vehicle findVehicleFor(Request request, boolean usePickupLocation) {
+        int stackID = stackOf(request, usePickupLocation).getID();
+        Vehicle leastLoaded = vehicles.get(0);
+        for (Vehicle vehicle : vehicles) {
+            for (Request other : vehicle.getRequests()) {
+                if (stackOf(other, usePickupLocation).getID() == stackID) return vehicle;
+            }
+            for (Request other : vehicle.getOpenRequests()) {
+                if (stackOf(other, usePickupLocation).getID() == stackID) return vehicle;
+            }
+            int load = vehicle.getRequests().size() + vehicle.getOpenRequests().size();
+            if (load < leastLoaded.getRequests().size() + leastLoaded.getOpenRequests().size()) leastLoaded = vehicle;
+        }
+        return leastLoaded;
+    }
 
-            int stackId = stack.getID();
-            stackLoad.merge(stackId, 1, Integer::sum);
+    // work stealing: a vehicle without work takes the pending requests of one stack from the vehicle with the most pending requests,
+    // the stack closest to it. not a stack that vehicle is working on, and only if the stack is free when it gets there
+    public boolean stealFor(Vehicle idle, boolean usePickupLocation, double time, StackReservations stackReservations, boolean[] firstGetAnother) {
+        stealRetryTimes[idle.getIndex()] = Double.POSITIVE_INFINITY;
+        Vehicle busiest = null;
+        for (Vehicle vehicle : vehicles) {
+            if (vehicle == idle) continue;
+            if (busiest == null || vehicle.getRequests().size() > busiest.getRequests().size()) busiest = vehicle;
+        }
+        if (busiest == null || busiest.getRequests().isEmpty()) return false;
+
+        HashSet<Integer> workingOn = new HashSet<>();
+        for (Request open : busiest.getOpenRequests()) {
+            workingOn.add(stackOf(open, usePickupLocation).getID());
+        }
+        // its next request can already be planned in (get another box first), as can requests of which the box is already on the vehicle
+        if (firstGetAnother != null && firstGetAnother[busiest.getIndex()]) workingOn.add(stackOf(busiest.getRequests().get(0), usePickupLocation).getID());
+        for (Request request : busiest.getRequests()) {
+            if (busiest.hasBox(request.getBoxID())) workingOn.add(stackOf(request, usePickupLocation).getID());
         }
-        return stackLoad;
+        GraphNode best = null;
+        double bestTravel = Double.POSITIVE_INFINITY;
+        for (Request request : busiest.getRequests()) {
+            GraphNode stackNode = usePickupLocation ? request.getPickupLocation() : request.getPlaceLocation();
+            Stack stack = (Stack) stackNode.getStorage();
+            if (workingOn.contains(stack.getID())) continue;
+            double travel = graph.getTravelTime(idle, stackNode);
+            if (stackReservations.busyUntil(stack) > time + travel) {
+                stealRetryTimes[idle.getIndex()] = Math.min(stealRetryTimes[idle.getIndex()], Math.ceil(stackReservations.busyUntil(stack) - travel));
+            } else if (travel < bestTravel) {
+                best = stackNode;
+                bestTravel = travel;
+            }
+        }
+        if (best == null) return false;
+
+        // the requests of the stack keep their order (stack depth)
+        List<Request> stolen = new ArrayList<>();
+        for (Request request : busiest.getRequests()) {
+            if ((usePickupLocation ? request.getPickupLocation() : request.getPlaceLocation()) == best) stolen.add(request);
+        }
+        busiest.removeRequests(stolen);
+        idle.insertRequests(0, stolen);
+        return true;
+    }
+
+    public double getStealRetryTime(Vehicle vehicle) {
+        return stealRetryTimes[vehicle.getIndex()];
+    }
+
+    private static Stack stackOf(Request request, boolean usePickupLocation) {
+        return (Stack) (usePickupLocation ? request.getPickupLocation().getStorage() : request.getPlaceLocation().getStorage());
+    }
+
+    public void setDistributionType(DISTRIBUTION_TYPE distributionType) {
+        this.distributionType = distributionType;
+    }
+
+    public DISTRIBUTION_TYPE getDistributionType() {
+        return distributionType;
     }
 
     private void initializeRequestsPerVehicleList(){
@@ -56,29 +150,164 @@ public class RequestDistribution {
             requestsPerVehicleList.add(new ArrayList<>());
         }
     }
-    private void createVehicleRequestLists(List<Request> requestList, boolean usePickupLocation, int requestsPerVehicle, List<Integer> stackIDs){
+    // whole stacks are dealt out round-robin, skipping vehicles that have enough requests
+    private void createVehicleRequestLists(List<StackGroup> groups, int requestsPerVehicle){
         int vehicleIndex = 0;
-        for (Integer stackID : stackIDs) {
+        for (StackGroup group : groups) {
             // if a vehicle has enough requests, go to the next vehicle
             while (requestsPerVehicleList.get(vehicleIndex).size() >= requestsPerVehicle) {
                 vehicleIndex++;
             }
 
-            // Filter requests based on location type
-            List<Request> requestsForStack = requestList.stream()
-                .filter(x -> {
-                    Stack stack = (Stack) (usePickupLocation ?
-                        x.getPickupLocation().getStorage() :
-                        x.getPlaceLocation().getStorage());
-                    return stack.getID() == stackID;
-                })
-                .toList();
-
-            requestsPerVehicleList.get(vehicleIndex).addAll(requestsForStack);
+            requestsPerVehicleList.get(vehicleIndex).addAll(group.requests());
             vehicleIndex++;
             if (vehicleIndex == vehicles.size()) {
                 vehicleIndex = 0;
             }
         }
     }
+
+    // greedy: every stack goes to the vehicle with the earliest estimated finish after doing it (its position, travel, loading and relocations),
+    // then stacks are moved away from the vehicle that finishes last as long as that brings the last finish down
+    private void createVehicleRequestListsByCost(List<StackGroup> groups, boolean usePickupLocation) {
+        int n = vehicles.size();
+        double[] finish = new double[n];
+        GraphNode[] position = new GraphNode[n];
+        List<List<StackGroup>> assigned = new ArrayList<>();
+        List<List<Double>> costs = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            finish[i] = vehicles.get(i).getUnavailableUntil();
+            assigned.add(new ArrayList<>());
+            costs.add(new ArrayList<>());
+        }
+
+        for (StackGroup group : groups) {
+            int best = 0;
+            double bestCost = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                double cost = cost(i, position[i], group, usePickupLocation);
+                if (finish[i] + cost < finish[best] + bestCost) {
+                    best = i;
+                    bestCost = cost;
+                }
+            }
+            assigned.get(best).add(group);
+            costs.get(best).add(bestCost);
+            finish[best] += bestCost;
+            position[best] = endPosition(group);
+        }
+
+        // local repair, the moved stack is appended to the other vehicle
+        for (int iteration = 0; iteration < groups.size(); iteration++) {
+            int last = 0;
+            for (int i = 1; i < n; i++) {
+                if (finish[i] > finish[last]) last = i;
+            }
+            int bestGroup = -1, bestVehicle = -1;
+            double bestMakespan = finish[last], bestTargetCost = 0;
+            for (int g = 0; g < assigned.get(last).size(); g++) {
+                StackGroup group = assigned.get(last).get(g);
+                double remaining = finish[last] - costs.get(last).get(g);
+                for (int i = 0; i < n; i++) {
+                    if (i == last) continue;
+                    double targetCost = cost(i, position[i], group, usePickupLocation);
+                    double makespan = Math.max(remaining, finish[i] + targetCost);
+                    if (makespan < bestMakespan) {
+                        bestMakespan = makespan;
+                        bestGroup = g;
+                        bestVehicle = i;
+                        bestTargetCost = targetCost;
+                    }
+                }
+            }
+            if (bestGroup == -1) break;
+            StackGroup group = assigned.get(last).remove(bestGroup);
+            finish[last] -= costs.get(last).remove(bestGroup);
+            assigned.get(bestVehicle).add(group);
+            costs.get(bestVehicle).add(bestTargetCost);
+            finish[bestVehicle] += bestTargetCost;
+            position[bestVehicle] = endPosition(group);
+        }
+
+        for (int i = 0; i < n; i++) {
+            for (StackGroup group : assigned.get(i)) {
+                requestsPerVehicleList.get(i).addAll(group.requests());
+            }
+        }
+    }
+
+    // sweep: the stacks sorted along the widest axis of the layout are cut into one contiguous region per vehicle, with about the same
+    // estimated work in each. the vehicles get the regions in the order of their start location on that axis
+    private void createVehicleRequestListsByRegion(List<StackGroup> groups, boolean usePickupLocation) {
+        if (groups.isEmpty()) return;
+        int minX = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, minY = Integer.MAX_VALUE, maxY = Integer.MIN_VALUE;
+        for (StackGroup group : groups) {
+            Location location = group.stack().getLocation();
+            minX = Math.min(minX, location.getX());
+            maxX = Math.max(maxX, location.getX());
+            minY = Math.min(minY, location.getY());
+            maxY = Math.max(maxY, location.getY());
+        }
+        boolean alongX = maxX - minX >= maxY - minY;
+        Comparator<Location> sweep = alongX
+                ? Comparator.comparingInt(Location::getX).thenComparingInt(Location::getY)
+                : Comparator.comparingInt(Location::getY).thenComparingInt(Location::getX);
+        List<StackGroup> sorted = new ArrayList<>(groups);
+        sorted.sort((g1, g2) -> sweep.compare(g1.stack().getLocation(), g2.stack().getLocation()));
+        List<Integer> vehicleOrder = new ArrayList<>();
+        for (int i = 0; i < vehicles.size(); i++) vehicleOrder.add(i);
+        vehicleOrder.sort((v1, v2) -> sweep.compare(vehicles.get(v1).getLocation(), vehicles.get(v2).getLocation()));
+
+        int next = 0;
+        for (int v = 0; v < vehicleOrder.size(); v++) {
+            int vehicleIndex = vehicleOrder.get(v);
+            // the work that is left, as this vehicle would do it, shared over the vehicles that are left
+            double remaining = 0;
+            for (int g = next; g < sorted.size(); g++) {
+                remaining += cost(vehicleIndex, sorted.get(g).stack(), sorted.get(g), usePickupLocation);
+            }
+            double target = remaining / (vehicleOrder.size() - v);
+            double work = 0;
+            while (next < sorted.size()) {
+                double groupWork = cost(vehicleIndex, sorted.get(next).stack(), sorted.get(next), usePickupLocation);
+                // the last vehicle takes everything, the others stop at the stack that gets them closest to their share
+                if (v < vehicleOrder.size() - 1 && work > 0 && work + groupWork / 2 > target) break;
+                requestsPerVehicleList.get(vehicleIndex).addAll(sorted.get(next).requests());
+                work += groupWork;
+                next++;
+            }
+        }
+    }
+
+    // estimated time for a vehicle to do the requests of one stack: getting there, the trips to the buffer points (capacity boxes at a time),
+    // picking up and placing every box and the relocations of the boxes that are in the way
+    private double cost(int vehicleIndex, GraphNode from, StackGroup group, boolean usePickupLocation) {
+        Vehicle vehicle = vehicles.get(vehicleIndex);
+        GraphNode stackNode = group.stack();
+        double travel = from == null ? graph.getTravelTime(vehicle, stackNode) : graph.getTravelTime(from, stackNode);
+        double trips = 0;
+        for (Request request : group.requests()) {
+            GraphNode other = usePickupLocation ? request.getPlaceLocation() : request.getPickupLocation();
+            trips += 2 * graph.getTravelTime(stackNode, other);
+        }
+        trips /= Math.max(1, vehicle.getCapacity());
+        int moves = group.requests().size() + expectedRelocations(group, usePickupLocation);
+        return travel + trips + 2 * loadingSpeed * moves;
+    }
+
+    // boxes above the deepest requested one that are not requested themselves, or the boxes that don't fit on the destination stack
+    private int expectedRelocations(StackGroup group, boolean usePickupLocation) {
+        Stack stack = (Stack) group.stack().getStorage();
+        if (!usePickupLocation) return Math.max(0, stack.getBoxesSize() + group.requests().size() - stack.getCapacity());
+        int deepest = 0;
+        for (Request request : group.requests()) {
+            deepest = Math.max(deepest, stack.getDepthOfBox(request.getBoxID()));
+        }
+        return Math.max(0, deepest - group.requests().size());
+    }
+
+    // where the vehicle is after the last request of the stack (the buffer point, or the stack it filled)
+    private static GraphNode endPosition(StackGroup group) {
+        return group.requests().getLast().getPlaceLocation();
+    }
 }
@@ -0,0 +1,129 @@
+package org.kuleuven.engineering;
+
+import java.nio.file.Path;
+import java.util.EmptyStackException;
+
+import org.kuleuven.engineering.dataReading.DataReader;
+import org.kuleuven.engineering.types.InvalidMoveException;
+
+// rolling horizon: only the operations in the next window are committed, the pending request lists of the vehicles are the tentative plan after it.
+// before every window the tentative plan is replanned: changes to the lists (the destroy/repair of the large neighbourhood search) are simulated
+// on forks up to the horizon and kept when more requests are done by then. the next replan starts from the lists that were kept,
+// so a replan only looks at one horizon and takes at most its time budget, however many requests the instance has
+public class RollingHorizon {
+    // changes that are tried at most to repair a plan that turned out impossible after the previous horizon
+    private static final int MAX_REPAIRS = 10000;
+
+    private final double window;
+    private final double horizon;
+    private final long replanBudgetMs;
+    private final LargeNeighbourhoodSearch moves;
+    private int replans = 0;
+    private int changes = 0;
+
+    // how far a simulated plan got at the end of the horizon
+    private record Outcome(boolean finished, int doneRequests, double makespan) {
+        static final Outcome FAILED = new Outcome(false, -1, Double.POSITIVE_INFINITY);
+
+        boolean isBetterThan(Outcome other) {
+            if (finished != other.finished) return finished;
+            if (finished) return makespan < other.makespan;
+            return doneRequests > other.doneRequests;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) throw new Exception("Usage: RollingHorizon <instance> <output file> [window] [horizon] [replan ms] [cache directory]");
+        double window = args.length > 2 ? Double.parseDouble(args[2]) : 1000;
+        double horizon = args.length > 3 ? Double.parseDouble(args[3]) : 4 * window;
+        long replanBudgetMs = args.length > 4 ? Long.parseLong(args[4]) : 50;
+        Path cacheDirectory = args.length > 5 && !args[5].equals("-") ? Path.of(args[5]) : null;
+
+        Warehouse warehouse = DataReader.read(args[0], cacheDirectory);
+        if (warehouse == null) throw new Exception("File doesn't exist");
+        RollingHorizon rollingHorizon = new RollingHorizon(window, horizon, replanBudgetMs, 0);
+        warehouse = rollingHorizon.schedule(warehouse);
+        System.out.println("rolling horizon: " + rollingHorizon.getChanges() + " changes in " + rollingHorizon.getReplans() + " replans, makespan " + warehouse.getMakespan());
+        warehouse.writeOperationLog(args[1]);
+    }
+
+    public RollingHorizon(double window, double horizon, long replanBudgetMs, long seed) {
+        if (window <= 0 || horizon < window) throw new IllegalArgumentException("The horizon has to be at least one window");
+        this.window = window;
+        this.horizon = horizon;
+        this.replanBudgetMs = replanBudgetMs;
+        this.moves = new LargeNeighbourhoodSearch(seed);
+    }
+
+    // the warehouse must not be scheduled yet, the scheduled warehouse is returned (a replan can replace it by a fork with other lists)
+    public Warehouse schedule(Warehouse warehouse) {
+        boolean verbose = warehouse.isVerbose();
+        warehouse.setVerbose(false);
+        // the strategies hand out the requests at the start of the first window
+        warehouse.scheduleUntil(0);
+        while (!warehouse.isFinished()) {
+            warehouse = replan(warehouse);
+            warehouse.scheduleUntil(warehouse.getCurrentTime() + window);
+        }
+        warehouse.setVerbose(verbose);
+        return warehouse;
+    }
+
+    // the committed warehouse stays as it is, the fork with the best lists so far becomes the plan
+    private Warehouse replan(Warehouse committed) {
+        long deadline = System.currentTimeMillis() + replanBudgetMs;
+        double end = committed.getCurrentTime() + horizon;
+        Warehouse plan = committed;
+        Warehouse planAtHorizon = committed;
+        Outcome planOutcome;
+        try {
+            planAtHorizon = simulate(plan, end);
+            planOutcome = outcome(planAtHorizon);
+        } catch (InvalidMoveException | EmptyStackException e) {
+            // a change kept in an earlier replan only goes wrong after the previous horizon, any plan that works is better
+            planOutcome = Outcome.FAILED;
+        }
+        replans++;
+
+        int repairs = 0;
+        while (System.currentTimeMillis() < deadline || planOutcome == Outcome.FAILED) {
+            if (planOutcome == Outcome.FAILED && ++repairs > MAX_REPAIRS) {
+                throw new IllegalStateException("No working plan found at time " + committed.getCurrentTime());
+            }
+            Warehouse candidate = plan.fork();
+            if (!moves.destroyAndRepair(candidate, moves.criticalVehicle(planAtHorizon))) continue;
+            try {
+                Warehouse candidateAtHorizon = simulate(candidate, end);
+                Outcome candidateOutcome = outcome(candidateAtHorizon);
+                if (candidateOutcome.finished() && !candidateAtHorizon.isComplete()) continue;
+                if (candidateOutcome.isBetterThan(planOutcome)) {
+                    plan = candidate;
+                    planAtHorizon = candidateAtHorizon;
+                    planOutcome = candidateOutcome;
+                    changes++;
+                }
+            } catch (InvalidMoveException | EmptyStackException e) {
+                // the changed request order led to an impossible move, drop it
+            }
+        }
+        return plan;
+    }
+
+    private Warehouse simulate(Warehouse warehouse, double end) {
+        Warehouse trial = warehouse.fork();
+        trial.scheduleUntil(end);
+        return trial;
+    }
+
+    private Outcome outcome(Warehouse warehouse) {
+        return new Outcome(warehouse.isFinished(), warehouse.getDoneRequestCount(), warehouse.getMakespan());
+    }
+
+    public int getReplans() {
+        return replans;
+    }
+
+    public int getChanges() {
+        return changes;
+    }
+}
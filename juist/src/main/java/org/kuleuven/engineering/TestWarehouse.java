@@ -1,6 +1,7 @@
 package org.kuleuven.engineering;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Scanner; 
@@ -8,7 +9,7 @@ import java.util.Scanner;
 import org.kuleuven.engineering.dataReading.DataReader;
 
 public class TestWarehouse {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         List<File> files = Arrays.asList(new File("./juist/data/").listFiles());
         Scanner scanner = new Scanner(System.in);
         for (File f : files) {
@@ -1,21 +1,34 @@
 package org.kuleuven.engineering;
 
 import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import org.kuleuven.engineering.graph.Graph;
 import org.kuleuven.engineering.graph.GraphNode;
 import org.kuleuven.engineering.scheduling.BufferToStackSchedulingStrategy;
+import org.kuleuven.engineering.scheduling.STRATEGY_TYPE;
 import org.kuleuven.engineering.scheduling.SchedulingStrategy;
 import org.kuleuven.engineering.scheduling.StackToBufferSchedulingStrategy;
 import org.kuleuven.engineering.scheduling.TopBoxSchedulingStrategy;
+import org.kuleuven.engineering.types.ActiveRelocations;
+import org.kuleuven.engineering.types.BoxIds;
+import org.kuleuven.engineering.types.BoxLocations;
 import org.kuleuven.engineering.types.Location;
+import org.kuleuven.engineering.types.LogEntry;
+import org.kuleuven.engineering.types.Operation;
 import org.kuleuven.engineering.types.REQUEST_STATUS;
 import org.kuleuven.engineering.types.Request;
+import org.kuleuven.engineering.types.SharedLog;
 import org.kuleuven.engineering.types.Stack;
+import org.kuleuven.engineering.types.StackReservations;
 import org.kuleuven.engineering.types.Vehicle;
 
 
@@ -24,61 +37,235 @@ public class Warehouse {
     private final int loadingSpeed;
     private int round = 0;
     private long startingTime;
+    private boolean verbose = true;
+    private int makespan = 0;
+    // a schedule that can no longer get below this makespan is abandoned (portfolio runs)
+    private volatile int makespanBound = Integer.MAX_VALUE;
+    // when requests last came in (online), a schedule only gets further by logging operations after that
+    private double requestsAddedAt = 0;
+    // every request of the instance, including the ones that came in online
+    private final List<Request> allRequests;
+    // the strategy that is running and whether its requests were already distributed, so a paused or forked warehouse can go on
+    private int strategyIndex = 0;
+    private boolean strategyStarted = false;
+    // scheduling stops at the first tick at or after this time (scheduleUntil)
+    private double pauseTime = Double.POSITIVE_INFINITY;
     private final boolean[] firstGetAnother;
     private final Graph graph;
     private final List<Vehicle> vehicles;
     private final List<Request> requests;
-    private final HashMap<Integer, Integer> stackIsUsedUntil;
-    private final List<Integer[]> activeRelocations;
+    private int requestCount;
+    private final StackReservations stackReservations;
+    // box names of the instance, shared with the forks
+    private final BoxIds boxIds;
+    // where every box is, so a box is found without searching the stacks
+    private final BoxLocations boxLocations;
+    private final ActiveRelocations activeRelocations;
     private final HashMap<Integer, Integer> waitForRequestFinish;
-    private final List<String> operationLog;
+    private SharedLog<LogEntry> operationLog;
+    // online: gets every log line as soon as the operation is planned
+    private Consumer<String> operationListener = null;
+    // the same operations as the log, for replaying them without the strategies (ScheduleEvaluator)
+    private SharedLog<Operation> operations;
     private final List<List<Request>> requestsPerVehicleList;
+    private final List<STRATEGY_TYPE> strategyOrder;
     private final List<SchedulingStrategy> strategies;
     private final RequestDistribution requestDistributor;
     private final RequestHandling requestHandler;
 
-    public Warehouse(Graph graph, List<Vehicle> vehicles, List<Request> requests, int loadingSpeed) {
+    public static final List<STRATEGY_TYPE> DEFAULT_STRATEGIES = List.of(STRATEGY_TYPE.TOP_BOX, STRATEGY_TYPE.STACK_TO_BUFFER, STRATEGY_TYPE.BUFFER_TO_STACK);
+
+    public Warehouse(Graph graph, List<Vehicle> vehicles, List<Request> requests, BoxIds boxIds, int loadingSpeed) {
+        this(graph, vehicles, requests, boxIds, loadingSpeed, DEFAULT_STRATEGIES);
+    }
+
+    public Warehouse(Graph graph, List<Vehicle> vehicles, List<Request> requests, BoxIds boxIds, int loadingSpeed, List<STRATEGY_TYPE> strategyOrder) {
         this.graph = graph;
+        this.boxIds = boxIds;
         this.vehicles = vehicles;
         this.requests = requests;
+        this.allRequests = new ArrayList<>(requests);
+        this.requestCount = requests.size();
         this.loadingSpeed = loadingSpeed;
-        this.activeRelocations = new ArrayList<>();
-        this.stackIsUsedUntil = new HashMap<>();
+        this.activeRelocations = new ActiveRelocations();
         this.waitForRequestFinish = new HashMap<>();
-        this.operationLog = new ArrayList<>();
+        this.operationLog = new SharedLog<>();
+        this.operations = new SharedLog<>();
+        int stackCount = 0;
         for (GraphNode node : graph.getNodes()){
             if (node.getStorage() instanceof Stack stack){
-                stackIsUsedUntil.put(stack.getID(), -1);
+                stackCount = Math.max(stackCount, stack.getIndex() + 1);
             }
         }
+        this.stackReservations = new StackReservations(stackCount);
+        this.boxLocations = new BoxLocations(graph.getNodes(), vehicles);
+        attachBoxLocations();
         firstGetAnother = new boolean[vehicles.size()];
         requestsPerVehicleList = new ArrayList<>();
+        this.strategyOrder = strategyOrder;
         this.strategies = new ArrayList<>();
         requestHandler = new RequestHandling(loadingSpeed, this);
-        requestDistributor = new RequestDistribution(vehicles, requestsPerVehicleList);
-        initializeStrategies();
+        requestDistributor = new RequestDistribution(vehicles, requestsPerVehicleList, graph, loadingSpeed);
+        initializeStrategies(strategyOrder);
         
     }
 
-    private void initializeStrategies() {
-        // Add strategies in the order they should be executed
-        strategies.add(new TopBoxSchedulingStrategy(requestDistributor, requestHandler, this));
+    // independent copy of the simulation state: stack contents and reservations are shared until either side changes them,
+    // travel times are shared for good. the copy goes on with the same strategies from the same tick
+    private Warehouse(Warehouse other) {
+        this.graph = other.graph.fork();
+        IdentityHashMap<Request, Request> requestCopies = new IdentityHashMap<>();
+        Function<Request, Request> requestCopy = request -> requestCopies.computeIfAbsent(request,
+                r -> r.copy(graph.getNode(r.getPickupLocation()), graph.getNode(r.getPlaceLocation())));
 
-        strategies.add(new StackToBufferSchedulingStrategy(requestDistributor, requestHandler, this));
-            
-        strategies.add(new BufferToStackSchedulingStrategy(requestDistributor, requestHandler, this));
+        this.vehicles = new ArrayList<>(other.vehicles.size());
+        for (Vehicle vehicle : other.vehicles) {
+            vehicles.add(vehicle.copy(graph::getNode, requestCopy));
+        }
+        this.requests = new ArrayList<>(other.requests.size());
+        for (Request request : other.requests) {
+            requests.add(requestCopy.apply(request));
+        }
+        this.allRequests = new ArrayList<>(other.allRequests.size());
+        for (Request request : other.allRequests) {
+            allRequests.add(requestCopy.apply(request));
+        }
+
+        this.currentTime = other.currentTime;
+        this.loadingSpeed = other.loadingSpeed;
+        this.round = other.round;
+        this.startingTime = other.startingTime;
+        this.verbose = other.verbose;
+        this.makespan = other.makespan;
+        this.makespanBound = other.makespanBound;
+        this.requestsAddedAt = other.requestsAddedAt;
+        this.strategyIndex = other.strategyIndex;
+        this.strategyStarted = other.strategyStarted;
+        this.requestCount = other.requestCount;
+        this.firstGetAnother = other.firstGetAnother.clone();
+        this.stackReservations = other.stackReservations.copy();
+        this.boxIds = other.boxIds;
+        this.boxLocations = other.boxLocations.copy();
+        attachBoxLocations();
+        this.activeRelocations = other.activeRelocations.copy();
+        this.waitForRequestFinish = new HashMap<>(other.waitForRequestFinish);
+        // the logs up to now are shared, not copied
+        this.operationLog = other.operationLog.fork();
+        this.operations = other.operations.fork();
+
+        // the vehicles hold the request lists the distributor fills
+        this.requestsPerVehicleList = new ArrayList<>();
+        for (Vehicle vehicle : vehicles) {
+            requestsPerVehicleList.add(vehicle.getRequests());
+        }
+        this.strategyOrder = other.strategyOrder;
+        this.strategies = new ArrayList<>();
+        this.requestHandler = new RequestHandling(loadingSpeed, this);
+        this.requestDistributor = new RequestDistribution(vehicles, requestsPerVehicleList, graph, loadingSpeed);
+        requestDistributor.setDistributionType(other.requestDistributor.getDistributionType());
+        initializeStrategies(strategyOrder);
+    }
+
+    public Warehouse fork() {
+        return new Warehouse(this);
+    }
+
+    private void attachBoxLocations() {
+        for (GraphNode node : graph.getNodes()) {
+            if (node.getStorage() instanceof Stack stack) stack.setBoxLocations(boxLocations);
+        }
+        for (Vehicle vehicle : vehicles) {
+            vehicle.setBoxLocations(boxLocations);
+        }
+    }
+
+    private void initializeStrategies(List<STRATEGY_TYPE> strategyOrder) {
+        // Add strategies in the order they should be executed
+        for (STRATEGY_TYPE type : strategyOrder) {
+            strategies.add(switch (type) {
+                case TOP_BOX -> new TopBoxSchedulingStrategy(requestDistributor, requestHandler, this);
+                case STACK_TO_BUFFER -> new StackToBufferSchedulingStrategy(requestDistributor, requestHandler, this);
+                case BUFFER_TO_STACK -> new BufferToStackSchedulingStrategy(requestDistributor, requestHandler, this);
+            });
+        }
    }
 
     public void scheduleRequests() {
         startingTime = System.currentTimeMillis();
+        continueScheduling();
+    }
+
+    // schedule until the first tick at or after the given time, continueScheduling (on this warehouse or a fork) goes on from there
+    public void scheduleUntil(double time) {
+        if (strategyIndex == 0 && !strategyStarted) startingTime = System.currentTimeMillis();
+        pauseTime = time;
+        continueScheduling();
+        pauseTime = Double.POSITIVE_INFINITY;
+    }
+
+    public void continueScheduling() {
         // Execute each strategy in order
-        for (SchedulingStrategy strategy : strategies) {
-            strategy.schedule();
+        while (strategyIndex < strategies.size()) {
+            if (isCancelled() || isStalled()) break;
+            SchedulingStrategy strategy = strategies.get(strategyIndex);
+            if (!strategyStarted) {
+                strategyStarted = true;
+                strategy.schedule();
+            }
+            else strategy.resume();
+            if (currentTime >= pauseTime) return;
             resetVehicleStackIDs();
             round++;
-            System.out.println(currentTime);
+            if (verbose) System.out.println(currentTime);
+            strategyIndex++;
+            strategyStarted = false;
         }
     }
+
+    public boolean isFinished() {
+        return strategyIndex == strategies.size();
+    }
+
+    // online: a request that comes in while the warehouse is running. the running strategy takes it if it handles that kind of request,
+    // otherwise it waits in the request list for the next strategy, or for the next round of strategies when they are all done
+    public void addRequest(Request request) {
+        allRequests.add(request);
+        requestCount = Math.max(requestCount, request.getIndex() + 1);
+        requestsAddedAt = currentTime;
+        locateBox(request);
+        if (strategyStarted && strategies.get(strategyIndex).offer(request)) return;
+        requests.add(request);
+        if (isFinished()) restartStrategies();
+    }
+
+    // run every strategy again, from the current time, for the requests that are waiting
+    public void restartStrategies() {
+        strategyIndex = 0;
+        strategyStarted = false;
+        requestsAddedAt = currentTime;
+        for (Request request : requests) {
+            locateBox(request);
+        }
+    }
+
+    // boxes can be relocated by the strategies while a request waits, the request then picks it up where it is now
+    void locateBox(Request request) {
+        if (!(request.getPickupLocation().getStorage() instanceof Stack pickup) || pickup.getDepthOfBox(request.getBoxID()) != -1) return;
+        // stack index and node index are the same, the stacks are the first nodes
+        int stackIndex = boxLocations.getStackIndex(request.getBoxID());
+        if (stackIndex != -1) request.setPickupLocation(graph.getNodes().get(stackIndex));
+    }
+
+    // online: schedule until the given time, when there is nothing to do the clock is moved on to it
+    public void advanceTo(double time) {
+        scheduleUntil(time);
+        // requests that came in while the last strategies of the round were running
+        if (isFinished() && !requests.isEmpty()) {
+            restartStrategies();
+            scheduleUntil(time);
+        }
+        if (isFinished() && currentTime < time) currentTime = time;
+    }
     
     private void resetVehicleStackIDs() {
         for (Vehicle vehicle : vehicles){
@@ -86,120 +273,113 @@ public class Warehouse {
         }
     }
     
-    public List<GraphNode> findNStorage(int N, GraphNode src, GraphNode dest, REQUEST_STATUS status, Vehicle currentVehicle){
+    // time is when the vehicle leaves, a stack is usable if it is no longer booked when the vehicle gets there
+    public List<GraphNode> findNStorage(int N, GraphNode src, GraphNode dest, REQUEST_STATUS status, Vehicle currentVehicle, double time){
         if(N == 0) return null;
         
         // check if current vehicle can go to one of its own stacks (to avoid interference with other vehicles)
-        List<GraphNode> accessibleStacks = findOwnAccessibleStacks(currentVehicle, src, dest);
+        List<GraphNode> accessibleStacks = findOwnAccessibleStacks(currentVehicle, src, dest, time);
         if (!accessibleStacks.isEmpty()) return accessibleStacks;
         
         // find stack that no vehicle has requests for
-        List<GraphNode> requestStacks = findAvailableStack(currentVehicle, src, dest, status);
+        List<GraphNode> requestStacks = findAvailableStack(currentVehicle, src, dest, status, time);
         if (!requestStacks.isEmpty()) return requestStacks;
 
         // find stack that is in request of other vehicles
-        List<GraphNode> remainingStacks = findOtherVehicleStacks(currentVehicle, src, dest, status);
-        return remainingStacks;
+        List<GraphNode> remainingStacks = findOtherVehicleStacks(currentVehicle, src, dest, status, time);
+        if (!remainingStacks.isEmpty()) return remainingStacks;
+
+        // only its own stacks are left (a vehicle alone in a zone that stands at a buffer point)
+        return findOwnFreeStacks(currentVehicle, src, dest, time);
     }
 
-    private List<GraphNode> findOwnAccessibleStacks(Vehicle currentVehicle, GraphNode src, GraphNode dest) {
+    private List<GraphNode> findOwnAccessibleStacks(Vehicle currentVehicle, GraphNode src, GraphNode dest, double time) {
         List<GraphNode> accessibleStacks = new ArrayList<>();
         for (Integer stackID : currentVehicle.getMyStackIDs()) {
             int srcID = src.getStorage().getID();
             int destID = dest.getStorage().getID();
             boolean notSrcOrDest = stackID != srcID && stackID != destID;
             boolean notCurrentlyAtNode = currentVehicle.getCurrentNode() == null;
-            boolean currentNodeIsStack = currentVehicle.getCurrentNode().getStorage() instanceof Stack;
+            boolean currentNodeIsStack = !notCurrentlyAtNode && currentVehicle.getCurrentNode().getStorage() instanceof Stack;
             Stack currentNodeStack = currentNodeIsStack ? (Stack) currentVehicle.getCurrentNode().getStorage() : null;
             Stack stack2 = (Stack) graph.getStackByID(stackID).getStorage();
 
             
             if (notSrcOrDest && ( notCurrentlyAtNode || (currentNodeIsStack && currentNodeStack.getID() != stackID && !stack2.isFull()))) {
-                int time1 = stackIsUsedUntil.get(stackID);
-                int time2 = (int) currentTime;
-                boolean stackIsUsed = time1 < time2;
-                if (stackIsUsed) {
+                if (isFreeOnArrival(currentVehicle, graph.getStackByID(stackID), time)) {
                     accessibleStacks.add(graph.getStackByID(stackID));
                 }
             }
         }
         return accessibleStacks;
     }
-    private List<GraphNode> findRequestStacks(Vehicle currentVehicle, GraphNode src, GraphNode dest, int type) {
-        List<GraphNode> requestStacks = new ArrayList<>();
+    private List<GraphNode> findOwnFreeStacks(Vehicle currentVehicle, GraphNode src, GraphNode dest, double time) {
+        GraphNode closest = graph.findClosestNode(dest, node -> !(node == src || node == dest) && node.getStorage() instanceof Stack stack
+                && currentVehicle.getMyStackIDs().contains(stack.getID()) && !stack.isFull() && isFreeOnArrival(currentVehicle, node, time));
+
+        List<GraphNode> nodes = new ArrayList<>();
+        if (closest != null) nodes.add(closest);
+        return nodes;
+    }
+    private boolean isFreeOnArrival(Vehicle vehicle, GraphNode node, double time) {
+        return stackReservations.busyUntil((Stack) node.getStorage()) <= time + graph.getTravelTime(vehicle, node);
+    }
+    // marks (by node index) the stacks that vehicles have requests for
+    private boolean[] findRequestStacks(Vehicle currentVehicle, int type) {
+        boolean[] requestStacks = new boolean[graph.getNodes().size()];
         for (Vehicle vehicle : vehicles) {
             if (type == 2 && vehicle == currentVehicle) continue;
             for (Integer stackID : vehicle.getMyStackIDs()) {
                 if (currentVehicle.getCurrentNode() == null || isDifferentStack(currentVehicle, stackID)) {
-                    requestStacks.add(graph.getStackByID(stackID));
+                    requestStacks[graph.getStackByID(stackID).getIndex()] = true;
                 }
             }
         }
         return requestStacks;
     }
+    // a vehicle at a buffer point is not at any of the stacks
     private boolean isDifferentStack(Vehicle currentVehicle, Integer stackID) {
-        return currentVehicle.getCurrentNode().getStorage() instanceof Stack stack && stackID != stack.getID();
+        return !(currentVehicle.getCurrentNode().getStorage() instanceof Stack stack) || stackID != stack.getID();
     }
-    private boolean isValidNode(GraphNode node, GraphNode src, GraphNode dest, List<GraphNode> requestStacks) {
-        return !(node == src || node == dest || requestStacks.contains(node)) && node.getStorage() instanceof Stack stack && !stack.isFull();
+    private boolean isValidNode(GraphNode node, GraphNode src, GraphNode dest, boolean[] requestStacks) {
+        return !(node == src || node == dest || requestStacks[node.getIndex()]) && node.getStorage() instanceof Stack stack && !stack.isFull();
     }
-    private List<GraphNode> findAvailableStack(Vehicle currentVehicle, GraphNode src, GraphNode dest, REQUEST_STATUS status) {
+    private List<GraphNode> findAvailableStack(Vehicle currentVehicle, GraphNode src, GraphNode dest, REQUEST_STATUS status, double time) {
         // find stack that no vehicle has requests for
-        List<GraphNode> requestStacks = findRequestStacks(currentVehicle, src, dest,1);
+        boolean[] requestStacks = findRequestStacks(currentVehicle, 1);
 
         // find stack that is closest to src or dest
-        PriorityQueue<GraphNode> nodesByDistance = new PriorityQueue<>((node1, node2) -> {
-            GraphNode node = (status == REQUEST_STATUS.SRC) ? src : dest;
-            double distance1 = graph.calculateTime(node.getLocation(), node1.getLocation());
-            double distance2 = graph.calculateTime(node.getLocation(), node2.getLocation());
-            return Double.compare(distance1, distance2);
-        });
-        nodesByDistance.addAll(graph.getNodes());
+        GraphNode from = (status == REQUEST_STATUS.SRC) ? src : dest;
+        GraphNode closest = graph.findClosestNode(from, node -> isValidNode(node, src, dest, requestStacks)
+                && (status == REQUEST_STATUS.SIMULATED || isFreeOnArrival(currentVehicle, node, time)));
 
         List<GraphNode> nodes = new ArrayList<>();
-        for (GraphNode node : nodesByDistance) {
-            if (isValidNode(node, src, dest, requestStacks)) {
-                Stack stack = (Stack) node.getStorage();
-                if ((stackIsUsedUntil.get(stack.getID()) < currentTime) || status == REQUEST_STATUS.SIMULATED) {
-                    nodes.add(node);
-                    return nodes;
-                }
-            }
-        }
-        return nodes; 
+        if (closest != null) nodes.add(closest);
+        return nodes;
     }
-    private List<GraphNode> findOtherVehicleStacks(Vehicle currentVehicle, GraphNode src, GraphNode dest, REQUEST_STATUS status) {
-        List<GraphNode> nodes = new ArrayList<>();
-        List<GraphNode> requestStacks = findRequestStacks(currentVehicle, src, dest, 2);
+    private List<GraphNode> findOtherVehicleStacks(Vehicle currentVehicle, GraphNode src, GraphNode dest, REQUEST_STATUS status, double time) {
+        boolean[] requestStacks = findRequestStacks(currentVehicle, 2);
 
         // find stack that is closest to src or dest
-        PriorityQueue<GraphNode> nodesByDistance2 = new PriorityQueue<>((node1, node2) -> {
-            GraphNode node = (status == REQUEST_STATUS.SRC) ? src : dest;
-            double distance1 = graph.calculateTime(node.getLocation(), node1.getLocation());
-            double distance2 = graph.calculateTime(node.getLocation(), node2.getLocation());
-            return Double.compare(distance1, distance2);
-        });
-        nodesByDistance2.addAll(requestStacks);
+        GraphNode from = (status == REQUEST_STATUS.SRC) ? src : dest;
+        GraphNode closest = graph.findClosestNode(from, node -> requestStacks[node.getIndex()] && !(node == src || node == dest)
+                && node.getStorage() instanceof Stack stack && !stack.isFull() && isFreeOnArrival(currentVehicle, node, time));
 
-        
-        for (GraphNode node : nodesByDistance2){
-            if(!(node == src || node == dest) && node.getStorage() instanceof Stack stack && !stack.isFull()){
-                if (stackIsUsedUntil.get(stack.getID()) < currentTime){
-                    nodes.add(node);
-                    return nodes;
-                }
-            }
-        }
+        List<GraphNode> nodes = new ArrayList<>();
+        if (closest != null) nodes.add(closest);
         return nodes;
     }
 
-    public HashMap<Integer, Integer> getStackIsUsedUntil() {
-        return stackIsUsedUntil;
+    public StackReservations getStackReservations() {
+        return stackReservations;
+    }
+    public BoxLocations getBoxLocations() {
+        return boxLocations;
     }
     public HashMap<Integer, Integer> getWaitForRequestFinish() {
         return waitForRequestFinish;
     }
-    public List<Integer[]> getActiveRelocations() {
+    public ActiveRelocations getActiveRelocations() {
         return activeRelocations;
     }
     public Graph getGraph() {
@@ -208,12 +388,108 @@ public class Warehouse {
     public double getCurrentTime() {
         return currentTime;
     }
-    public void incrementCurrentTime() {
-        this.currentTime++;
+    // jump to the next tick at which a vehicle can act. only available vehicles change anything
+    // (stack releases and finished relocations are only looked at by them), so the ticks in between are skipped.
+    // while there are pending requests a vehicle without work can act too: it steals work when it is free, or when a stack it was refused is
+    public void advanceToNextEvent() {
+        boolean pendingRequests = false;
+        for (Vehicle vehicle : vehicles) {
+            if (!vehicle.getRequests().isEmpty()) pendingRequests = true;
+        }
+        double nextTime = Double.POSITIVE_INFINITY;
+        for (Vehicle vehicle : vehicles) {
+            boolean hasWork = !vehicle.getRequests().isEmpty() || !vehicle.getOpenRequests().isEmpty();
+            if (!hasWork && !pendingRequests) continue;
+            // waiting on another vehicle's request, that vehicle will wake it up
+            if (vehicle.getUnavailableUntil() == Double.MAX_VALUE) continue;
+            // vehicles are available strictly after unavailableUntil, time advances in whole ticks
+            double availableFrom = Math.max(currentTime + 1, Math.floor(vehicle.getUnavailableUntil()) + 1);
+            if (!hasWork && vehicle.isAvailable(currentTime)) availableFrom = Math.max(currentTime + 1, requestDistributor.getStealRetryTime(vehicle));
+            nextTime = Math.min(nextTime, availableFrom);
+        }
+        if (nextTime == Double.POSITIVE_INFINITY) nextTime = currentTime + 1;
+        this.currentTime = nextTime;
+    }
+    // end time of the last operation in the schedule
+    public int getMakespan() {
+        return makespan;
+    }
+    public int getDoneRequestCount() {
+        int done = 0;
+        for (Request request : allRequests) {
+            if (request.isDone()) done++;
+        }
+        return done;
+    }
+    public int getRequestCount() {
+        return requestCount;
+    }
+    public void setOperationListener(Consumer<String> operationListener) {
+        this.operationListener = operationListener;
+    }
+    public int getMoveCount() {
+        return operationLog.size();
+    }
+    // round-robin per stack (default), by estimated finish time (travel, loading, relocations) or one region of the layout per vehicle
+    public void setDistributionType(DISTRIBUTION_TYPE distributionType) {
+        requestDistributor.setDistributionType(distributionType);
+    }
+    public BoxIds getBoxIds() {
+        return boxIds;
+    }
+    public List<LogEntry> getOperationLog() {
+        return operationLog;
+    }
+    public List<Operation> getOperations() {
+        return operations;
+    }
+    public void setMakespanBound(int makespanBound) {
+        this.makespanBound = makespanBound;
+    }
+    // the scheduling loops stop when the schedule is cancelled, paused or stuck
+    public boolean shouldStop() {
+        return isCancelled() || isStalled() || currentTime >= pauseTime;
+    }
+    // after the makespan no vehicle is busy and no stack is booked, a schedule that then still logs nothing for as long as it took
+    // to get there never will (e.g. two vehicles that keep taking each other's requests), it is left incomplete
+    public boolean isStalled() {
+        return currentTime > 2 * Math.max(makespan, requestsAddedAt) + loadingSpeed;
+    }
+    // every operation that is still planned ends after the current tick, so once either reaches the bound this schedule can't beat it
+    public boolean isCancelled() {
+        return makespan >= makespanBound || currentTime + loadingSpeed - 1 >= makespanBound;
+    }
+    // every request of the instance was carried out, no box was moved away from its destination stack afterwards and no box was left on a vehicle
+    public boolean isComplete() {
+        for (Request request : allRequests) {
+            if (!request.isDone()) return false;
+            if (request.getPlaceLocation().getStorage() instanceof Stack stack && stack.getDepthOfBox(request.getBoxID()) == -1) return false;
+        }
+        for (Vehicle vehicle : vehicles) {
+            if (vehicle.getCarriedBoxesCount() > 0) return false;
+        }
+        return true;
+    }
+    // the request that already put this box on the given node, null if there is none
+    public Request getPlacedRequest(int boxID, GraphNode place) {
+        for (Request request : allRequests) {
+            if (request.isDone() && request.getBoxID() == boxID && request.getPlaceLocation() == place) return request;
+        }
+        return null;
+    }
+    // when false nothing is printed to stdout, for running several warehouses at the same time
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+    public boolean isVerbose() {
+        return verbose;
     }
     public List<Vehicle> getVehicles() {
         return vehicles;
     }
+    public Vehicle getVehicle(int index) {
+        return vehicles.get(index);
+    }
     public List<Request> getRequests() {
         return requests;
     }
@@ -227,13 +503,17 @@ public class Warehouse {
         return firstGetAnother;
     }
     public void removeRequests(List<Request> requests){
-        this.requests.removeAll(requests);
+        boolean[] toRemove = new boolean[requestCount];
+        for (Request request : requests){
+            if (request.getIndex() >= 0) toRemove[request.getIndex()] = true;
+        }
+        this.requests.removeIf(request -> request.getIndex() >= 0 && toRemove[request.getIndex()]);
     }
     public void removeRequest(Request request){
         this.requests.remove(request);
     }
 
-    public void addLogEntry(String vehicleName, Location startLocation, double startTime, Location endLocation, double endTime, String boxId, REQUEST_STATUS type){
+    public void addLogEntry(Vehicle vehicle, Location startLocation, double startTime, Location endLocation, double endTime, int boxId, REQUEST_STATUS type){
         String operation = switch (type){
             case SRC -> "PU";
             case SRC_RELOC -> "PL"; // reloc
@@ -242,25 +522,53 @@ public class Warehouse {
             case DEST_RELOC -> "PL"; // reloc
             default -> "";
         };
-        // System.out.println(vehicleName + ";" + startLocation.getX() + ";"+ startLocation.getY() + ";" + (int) startTime  + ";" + endLocation.getX() + ";" + endLocation.getY()   + ";" + (int)endTime + ";"+ boxId + ";" + operation);
-        operationLog.add(vehicleName + ";" + startLocation.getX() + ";"+ startLocation.getY() + ";" + (int) startTime  + ";" + endLocation.getX() + ";" + endLocation.getY()   + ";" + (int)endTime + ";"+ boxId + ";" + operation);
+        LogEntry logEntry = new LogEntry(vehicle.getName(), startLocation.getX(), startLocation.getY(), (int) startTime, endLocation.getX(), endLocation.getY(), (int) endTime, boxId, operation);
+        operationLog.add(logEntry);
+        if (operationListener != null) operationListener.accept(logEntry.format(boxIds));
+        operations.add(new Operation(vehicle.getIndex(), vehicle.getCurrentNode().getIndex(), boxId, operation.equals("PU"), startTime, endTime));
+        makespan = Math.max(makespan, (int) endTime);
 
     }
 
-    public void writeOperationLog(String out) {
+    // the same operations at the times of another evaluation (ScheduleEvaluator.getSchedule), every vehicle keeps its order of operations
+    public void retime(List<Operation> schedule) {
+        List<ArrayDeque<Operation>> timesPerVehicle = new ArrayList<>();
+        for (int v = 0; v < vehicles.size(); v++) timesPerVehicle.add(new ArrayDeque<>());
+        for (Operation operation : schedule) timesPerVehicle.get(operation.vehicleIndex()).add(operation);
+
+        SharedLog<LogEntry> retimedLog = new SharedLog<>();
+        SharedLog<Operation> retimedOperations = new SharedLog<>();
+        makespan = 0;
+        Iterator<LogEntry> logEntries = operationLog.iterator();
+        for (Operation operation : operations) {
+            Operation timed = timesPerVehicle.get(operation.vehicleIndex()).poll();
+            if (timed == null || timed.nodeIndex() != operation.nodeIndex() || timed.boxID() != operation.boxID() || timed.pickup() != operation.pickup()) {
+                throw new IllegalArgumentException("Not the same operations as the schedule of this warehouse");
+            }
+            retimedLog.add(logEntries.next().at((int) timed.startTime(), (int) timed.endTime()));
+            retimedOperations.add(timed);
+            makespan = Math.max(makespan, (int) timed.endTime());
+        }
+        operationLog = retimedLog;
+        operations = retimedOperations;
+    }
+
+    // a schedule that can't be written is an error for the caller, not just a message
+    public void writeOperationLog(String out) throws IOException {
         long time = System.currentTimeMillis() - startingTime;
         StringBuilder output = new StringBuilder();
-        for (String logEntry : operationLog) {
-            output.append(logEntry+'\n');
-            System.out.println(logEntry);
+        for (LogEntry logEntry : operationLog) {
+            String line = logEntry.format(boxIds);
+            output.append(line).append('\n');
+            if (verbose) System.out.println(line);
         }
         try(FileWriter fw = new FileWriter(out)){
             fw.write("%vehicle;startx;starty;starttime;endx;endy;endtime;box;operation\n"+output);
-        } catch (Exception e){
-            System.out.println(e);
         }
-        System.out.println("aantal moves: " + operationLog.size());
-        System.out.println("Computation time(ms): " + time);
+        if (verbose) {
+            System.out.println("aantal moves: " + operationLog.size());
+            System.out.println("Computation time(ms): " + time);
+        }
     }
 
     @Override
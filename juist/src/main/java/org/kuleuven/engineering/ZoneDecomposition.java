@@ -0,0 +1,294 @@
+package org.kuleuven.engineering;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.kuleuven.engineering.dataReading.DataReader;
+import org.kuleuven.engineering.graph.GraphNode;
+import org.kuleuven.engineering.types.BoxIds;
+import org.kuleuven.engineering.types.LogEntry;
+import org.kuleuven.engineering.types.Stack;
+import org.kuleuven.engineering.types.Vehicle;
+
+// splits the layout into zones by stack location and schedules every zone as its own instance, at the same time.
+// a zone has its own stacks and vehicles and shares the buffer points (they have no bookings or capacity), so the zone schedules don't interfere.
+// requests that need stacks of two zones are scheduled afterwards on the whole layout, with every vehicle, from the state the zones ended in;
+// that schedule starts when the last zone is done. the operation log is the zone logs followed by that one
+public class ZoneDecomposition {
+    private final List<Warehouse> zoneWarehouses = new ArrayList<>();
+    private Warehouse reconciliation = null;
+    private int offset = 0;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) throw new Exception("Usage: ZoneDecomposition <instance> <output file> [zones] [threads] [cache directory]");
+        JSONObject instance = DataReader.readJson(args[0]);
+        if (instance == null) throw new Exception("File doesn't exist");
+        int zones = args.length > 2 ? Integer.parseInt(args[2]) : instance.getJSONArray("vehicles").length();
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        Path cacheDirectory = args.length > 4 && !args[4].equals("-") ? Path.of(args[4]) : null;
+
+        ZoneDecomposition decomposition = new ZoneDecomposition();
+        long start = System.currentTimeMillis();
+        decomposition.solve(instance, zones, threads, cacheDirectory);
+        System.out.println("zones: " + decomposition.getZoneCount() + ", makespan " + decomposition.getMakespan());
+        System.out.println("Computation time(ms): " + (System.currentTimeMillis() - start));
+        decomposition.writeOperationLog(args[1]);
+    }
+
+    public void solve(JSONObject instance, int zoneCount, int threads, Path cacheDirectory) throws InterruptedException, ExecutionException {
+        JSONArray stacks = instance.getJSONArray("stacks");
+        JSONArray vehicles = instance.getJSONArray("vehicles");
+        Map<String, Integer> zoneOfStack = new HashMap<>();
+        List<List<JSONObject>> zoneStacks = zones(stacks, Math.max(1, Math.min(zoneCount, vehicles.length())));
+        for (int z = 0; z < zoneStacks.size(); z++) {
+            for (JSONObject stack : zoneStacks.get(z)) {
+                zoneOfStack.put(stack.getString("name"), z);
+            }
+        }
+
+        List<List<JSONObject>> zoneRequests = new ArrayList<>();
+        for (int z = 0; z < zoneStacks.size(); z++) zoneRequests.add(new ArrayList<>());
+        List<JSONObject> crossRequests = new ArrayList<>();
+        JSONArray requests = instance.getJSONArray("requests");
+        for (int i = 0; i < requests.length(); i++) {
+            JSONObject request = requests.getJSONObject(i);
+            Integer pickupZone = zoneOfStack.get(location(request, "pickupLocation"));
+            Integer placeZone = zoneOfStack.get(location(request, "placeLocation"));
+            // buffer points belong to every zone
+            Integer zone = pickupZone == null ? placeZone : pickupZone;
+            if (zone == null || (placeZone != null && !placeZone.equals(zone))) crossRequests.add(request);
+            else zoneRequests.get(zone).add(request);
+        }
+
+        // zones without requests are left out, their stacks only show up again for the cross-zone requests
+        List<Integer> activeZones = new ArrayList<>();
+        for (int z = 0; z < zoneStacks.size(); z++) {
+            if (!zoneRequests.get(z).isEmpty()) activeZones.add(z);
+        }
+        List<List<JSONObject>> zoneVehicles = assignVehicles(vehicles, activeZones, zoneStacks, zoneRequests);
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, Math.max(1, activeZones.size()))));
+        List<Future<Warehouse>> futures = new ArrayList<>();
+        for (int i = 0; i < activeZones.size(); i++) {
+            int z = activeZones.get(i);
+            JSONObject zone = subInstance(instance, zoneStacks.get(z), zoneVehicles.get(i), zoneRequests.get(z));
+            futures.add(pool.submit(() -> {
+                Warehouse warehouse = DataReader.read(zone, cacheDirectory, Warehouse.DEFAULT_STRATEGIES);
+                warehouse.setVerbose(false);
+                warehouse.scheduleRequests();
+                return warehouse;
+            }));
+        }
+        pool.shutdown();
+        // a zone that failed or left requests undone would make the merged log invalid, so the whole run fails
+        for (Future<Warehouse> future : futures) {
+            Warehouse warehouse = future.get();
+            if (!warehouse.isComplete()) throw new IllegalStateException("zone schedule is not complete");
+            zoneWarehouses.add(warehouse);
+            offset = Math.max(offset, warehouse.getMakespan());
+        }
+
+        if (!crossRequests.isEmpty()) reconcile(instance, crossRequests, cacheDirectory);
+    }
+
+    // the whole layout as the zones left it: the stacks with the boxes they have now and the vehicles where they stopped
+    private void reconcile(JSONObject instance, List<JSONObject> crossRequests, Path cacheDirectory) {
+        Map<String, JSONObject> stacksNow = new HashMap<>();
+        Map<String, JSONObject> vehiclesNow = new HashMap<>();
+        for (Warehouse warehouse : zoneWarehouses) {
+            for (GraphNode node : warehouse.getGraph().getNodes()) {
+                if (node.getStorage() instanceof Stack stack) stacksNow.put(stack.getName(), stackJson(stack, node, warehouse.getBoxIds()));
+            }
+            for (Vehicle vehicle : warehouse.getVehicles()) {
+                vehiclesNow.put(vehicle.getName(), vehicleJson(vehicle));
+            }
+        }
+        List<JSONObject> stacks = new ArrayList<>();
+        JSONArray originalStacks = instance.getJSONArray("stacks");
+        for (int i = 0; i < originalStacks.length(); i++) {
+            JSONObject stack = originalStacks.getJSONObject(i);
+            stacks.add(stacksNow.getOrDefault(stack.getString("name"), stack));
+        }
+        List<JSONObject> vehicles = new ArrayList<>();
+        JSONArray originalVehicles = instance.getJSONArray("vehicles");
+        for (int i = 0; i < originalVehicles.length(); i++) {
+            JSONObject vehicle = originalVehicles.getJSONObject(i);
+            vehicles.add(vehiclesNow.getOrDefault(vehicle.getString("name"), vehicle));
+        }
+
+        reconciliation = DataReader.read(subInstance(instance, stacks, vehicles, crossRequests), cacheDirectory, Warehouse.DEFAULT_STRATEGIES);
+        reconciliation.setVerbose(false);
+        reconciliation.scheduleRequests();
+        if (!reconciliation.isComplete()) throw new IllegalStateException("cross-zone schedule is not complete");
+    }
+
+    // stacks sorted along the widest axis and cut where they lie the furthest apart (the halls), equal gaps are cut closest to equal zone sizes
+    private List<List<JSONObject>> zones(JSONArray stacks, int zoneCount) {
+        List<JSONObject> sorted = new ArrayList<>();
+        int minX = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, minY = Integer.MAX_VALUE, maxY = Integer.MIN_VALUE;
+        for (int i = 0; i < stacks.length(); i++) {
+            JSONObject stack = stacks.getJSONObject(i);
+            sorted.add(stack);
+            minX = Math.min(minX, stack.getInt("x"));
+            maxX = Math.max(maxX, stack.getInt("x"));
+            minY = Math.min(minY, stack.getInt("y"));
+            maxY = Math.max(maxY, stack.getInt("y"));
+        }
+        String axis = maxX - minX >= maxY - minY ? "x" : "y";
+        sorted.sort(Comparator.comparingInt(stack -> stack.getInt(axis)));
+
+        // a cut after position i, only between different coordinates
+        List<Integer> cuts = new ArrayList<>();
+        for (int i = 0; i + 1 < sorted.size(); i++) {
+            if (sorted.get(i).getInt(axis) != sorted.get(i + 1).getInt(axis)) cuts.add(i);
+        }
+        double zoneSize = (double) sorted.size() / zoneCount;
+        cuts.sort(Comparator.comparingInt((Integer i) -> sorted.get(i).getInt(axis) - sorted.get(i + 1).getInt(axis))
+                .thenComparingDouble(i -> {
+                    double position = (i + 1) / zoneSize;
+                    return Math.abs(position - Math.round(position));
+                }));
+        List<Integer> chosen = new ArrayList<>(cuts.subList(0, Math.min(zoneCount - 1, cuts.size())));
+        chosen.sort(null);
+
+        List<List<JSONObject>> zones = new ArrayList<>();
+        int from = 0;
+        for (int cut : chosen) {
+            zones.add(new ArrayList<>(sorted.subList(from, cut + 1)));
+            from = cut + 1;
+        }
+        zones.add(new ArrayList<>(sorted.subList(from, sorted.size())));
+        return zones;
+    }
+
+    // every zone gets one vehicle, the others go by number of requests; a zone takes the free vehicles that start closest to it
+    private List<List<JSONObject>> assignVehicles(JSONArray vehicles, List<Integer> activeZones, List<List<JSONObject>> zoneStacks, List<List<JSONObject>> zoneRequests) {
+        int zoneCount = activeZones.size();
+        int[] quota = new int[zoneCount];
+        int totalRequests = 0;
+        for (int z : activeZones) totalRequests += zoneRequests.get(z).size();
+        int spare = vehicles.length() - zoneCount;
+        int given = 0;
+        for (int i = 0; i < zoneCount; i++) {
+            quota[i] = 1 + spare * zoneRequests.get(activeZones.get(i)).size() / Math.max(1, totalRequests);
+            given += quota[i];
+        }
+        // what is left after rounding down goes to the busiest zones
+        List<Integer> byRequests = new ArrayList<>();
+        for (int i = 0; i < zoneCount; i++) byRequests.add(i);
+        byRequests.sort(Comparator.comparingInt((Integer i) -> -zoneRequests.get(activeZones.get(i)).size()));
+        for (int i = 0; given < vehicles.length() && zoneCount > 0; i = (i + 1) % zoneCount) {
+            quota[byRequests.get(i)]++;
+            given++;
+        }
+
+        List<JSONObject> free = new ArrayList<>();
+        for (int i = 0; i < vehicles.length(); i++) free.add(vehicles.getJSONObject(i));
+        List<List<JSONObject>> assigned = new ArrayList<>();
+        for (int i = 0; i < zoneCount; i++) {
+            double[] center = center(zoneStacks.get(activeZones.get(i)));
+            free.sort(Comparator.comparingDouble(vehicle -> Math.hypot(vehicleX(vehicle) - center[0], vehicleY(vehicle) - center[1])));
+            int n = Math.min(quota[i], free.size());
+            assigned.add(new ArrayList<>(free.subList(0, n)));
+            free.subList(0, n).clear();
+        }
+        return assigned;
+    }
+
+    private JSONObject subInstance(JSONObject instance, List<JSONObject> stacks, List<JSONObject> vehicles, List<JSONObject> requests) {
+        JSONObject sub = new JSONObject();
+        sub.put("loadingduration", instance.getInt("loadingduration"));
+        sub.put("vehiclespeed", instance.getInt("vehiclespeed"));
+        sub.put("stackcapacity", instance.getInt("stackcapacity"));
+        if (instance.has("routing")) sub.put("routing", instance.getJSONObject("routing"));
+        sub.put("stacks", new JSONArray(stacks));
+        sub.put("bufferpoints", instance.getJSONArray("bufferpoints"));
+        sub.put("vehicles", new JSONArray(vehicles));
+        sub.put("requests", new JSONArray(requests));
+        return sub;
+    }
+
+    private JSONObject stackJson(Stack stack, GraphNode node, BoxIds boxIds) {
+        JSONArray boxes = new JSONArray();
+        for (int depth = stack.getBoxesSize() - 1; depth >= 0; depth--) {
+            boxes.put(boxIds.name(stack.peakAtDepth(depth)));
+        }
+        JSONObject object = new JSONObject();
+        object.put("ID", stack.getID());
+        object.put("name", stack.getName());
+        object.put("x", node.getLocation().getX());
+        object.put("y", node.getLocation().getY());
+        object.put("boxes", boxes);
+        return object;
+    }
+
+    private JSONObject vehicleJson(Vehicle vehicle) {
+        JSONObject object = new JSONObject();
+        object.put("ID", vehicle.getID());
+        object.put("name", vehicle.getName());
+        object.put("capacity", vehicle.getCapacity());
+        object.put("x", vehicle.getLocation().getX());
+        object.put("y", vehicle.getLocation().getY());
+        return object;
+    }
+
+    private static String location(JSONObject request, String key) {
+        JSONArray names = request.optJSONArray(key);
+        return names != null ? names.getString(0) : request.getString(key);
+    }
+
+    private static double[] center(List<JSONObject> stacks) {
+        double x = 0, y = 0;
+        for (JSONObject stack : stacks) {
+            x += stack.getInt("x");
+            y += stack.getInt("y");
+        }
+        return new double[]{x / stacks.size(), y / stacks.size()};
+    }
+
+    private static int vehicleX(JSONObject vehicle) {
+        return vehicle.has("xCoordinate") ? vehicle.getInt("xCoordinate") : vehicle.getInt("x");
+    }
+
+    private static int vehicleY(JSONObject vehicle) {
+        return vehicle.has("yCoordinate") ? vehicle.getInt("yCoordinate") : vehicle.getInt("y");
+    }
+
+    public int getZoneCount() {
+        return zoneWarehouses.size();
+    }
+
+    public int getMakespan() {
+        return reconciliation == null ? offset : offset + reconciliation.getMakespan();
+    }
+
+    // the zones have no stacks in common, so every stack keeps its own order; the cross-zone operations are shifted to after the zones
+    public void writeOperationLog(String out) throws IOException {
+        StringBuilder output = new StringBuilder();
+        for (Warehouse warehouse : zoneWarehouses) {
+            for (LogEntry logEntry : warehouse.getOperationLog()) {
+                output.append(logEntry.format(warehouse.getBoxIds())).append('\n');
+            }
+        }
+        if (reconciliation != null) {
+            for (LogEntry logEntry : reconciliation.getOperationLog()) {
+                output.append(logEntry.shifted(offset).format(reconciliation.getBoxIds())).append('\n');
+            }
+        }
+        try (FileWriter fw = new FileWriter(out)) {
+            fw.write("%vehicle;startx;starty;starttime;endx;endy;endtime;box;operation\n" + output);
+        }
+    }
+}
@@ -8,11 +8,15 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.kuleuven.engineering.Warehouse;
 import org.kuleuven.engineering.graph.Graph;
 import org.kuleuven.engineering.graph.GraphNode;
+import org.kuleuven.engineering.graph.RoutingGrid;
+import org.kuleuven.engineering.scheduling.STRATEGY_TYPE;
+import org.kuleuven.engineering.types.BoxIds;
 import org.kuleuven.engineering.types.Bufferpoint;
 import org.kuleuven.engineering.types.Location;
 import org.kuleuven.engineering.types.Request;
@@ -20,66 +24,109 @@ import org.kuleuven.engineering.types.Stack;
 import org.kuleuven.engineering.types.Vehicle;
 
 public class DataReader {
-    public static Warehouse read(String filePath) {
-        try {
-            String content = Files.readString(Path.of(filePath));
-            JSONObject object = JsonParser.parseString(content);
-
-            int loadingDuration = object.getInt("loadingduration");
-            int vehicleSpeed = object.getInt("vehiclespeed");
-            int stackCapacity = object.getInt("stackcapacity");
-
-            List<Map<String, Object>> Jstacks = JsonParser.toList(object.getJSONArray("stacks"));
-            List<Map<String, Object>> Jbufferpoints = JsonParser.toList(object.getJSONArray("bufferpoints"));
-            List<Map<String, Object>> Jvehicles = JsonParser.toList(object.getJSONArray("vehicles"));
-            List<Map<String, Object>> Jrequests = JsonParser.toList(object.getJSONArray("requests"));
-
-            Graph graph = new Graph(vehicleSpeed);
-            HashMap<String, GraphNode> nodeMap = new HashMap<>();
-
-            for (Map<String, Object> Jobject : Jstacks) {
-                Stack stack = new Stack(new JSONObject(Jobject), stackCapacity);
-                Location location = new Location((int) Jobject.get("x"), (int) Jobject.get("y"));
-                GraphNode node = new GraphNode(stack, location);
-                graph.addNode(node);
-                nodeMap.put(node.getName(), node);
-            }
-
-            for (Map<String, Object> Jobject : Jbufferpoints) {
-                Bufferpoint bufferpoint = new Bufferpoint(new JSONObject(Jobject));
-                Location location = new Location((int) Jobject.get("x"), (int) Jobject.get("y"));
-                GraphNode node = new GraphNode(bufferpoint, location);
-                graph.addNode(node);
-                nodeMap.put(node.getName(), node);
-            }
+    private static final int ROUTING_PAIR_CACHE_SIZE = 1 << 16;
+    private static final int ROUTING_ROW_CACHE_SIZE = 256;
 
-            List<Vehicle> vehicles = new ArrayList<>();
-            for (Map<String, Object> Jobject : Jvehicles) {
-                vehicles.add(new Vehicle(new JSONObject(Jobject)));
-            }
+    public static Warehouse read(String filePath) {
+        return read(filePath, null);
+    }
 
-            List<Request> requests = new ArrayList<>();
-            for (Map<String, Object> Jobject : Jrequests) {
-                GraphNode pickupLocation, placeLocation;
-                JSONObject R_object = new JSONObject(Jobject);
-                // System.out.println(R_object.getJSONArray("pickupLocation").getString(0)+"  "+R_object.getJSONArray("placeLocation").getString(0));
-                try{
-                    pickupLocation = nodeMap.get(R_object.getJSONArray("pickupLocation").getString(0));
-                    placeLocation = nodeMap.get(R_object.getJSONArray("placeLocation").getString(0));
-                } catch (JSONException e){
-                    pickupLocation = nodeMap.get(R_object.getString("pickupLocation"));
-                    placeLocation = nodeMap.get(R_object.getString("placeLocation"));
-                }
-
-                int ID = R_object.getInt("ID");
-                String boxID = R_object.getString("boxID");
-                requests.add(new Request(pickupLocation, placeLocation, ID, boxID));
-            }
+    // with a cache directory, the travel time matrix of a known layout is mapped from disk instead of recomputed
+    public static Warehouse read(String filePath, Path cacheDirectory) {
+        JSONObject object = readJson(filePath);
+        if (object == null) return null;
+        return read(object, cacheDirectory, Warehouse.DEFAULT_STRATEGIES);
+    }
 
-            return new Warehouse(graph, vehicles, requests, loadingDuration);
+    public static JSONObject readJson(String filePath) {
+        try {
+            return JsonParser.parseString(Files.readString(Path.of(filePath)));
         } catch (IOException ex) {
             ex.printStackTrace();
         }
         return null;
     }
+
+    // builds a new, independent warehouse from an instance that was already parsed
+    public static Warehouse read(JSONObject object, Path cacheDirectory, List<STRATEGY_TYPE> strategyOrder) {
+        int loadingDuration = object.getInt("loadingduration");
+        int vehicleSpeed = object.getInt("vehiclespeed");
+        int stackCapacity = object.getInt("stackcapacity");
+
+        List<Map<String, Object>> Jstacks = JsonParser.toList(object.getJSONArray("stacks"));
+        List<Map<String, Object>> Jbufferpoints = JsonParser.toList(object.getJSONArray("bufferpoints"));
+        List<Map<String, Object>> Jvehicles = JsonParser.toList(object.getJSONArray("vehicles"));
+        List<Map<String, Object>> Jrequests = JsonParser.toList(object.getJSONArray("requests"));
+
+        // box numbers are only valid within this instance
+        BoxIds boxIds = new BoxIds();
+        Graph graph = new Graph(vehicleSpeed);
+        // optional aisle layout, vehicles then drive around the obstacles instead of in straight lines
+        if (object.has("routing")) graph.setRouting(readRoutingGrid(object.getJSONObject("routing"), vehicleSpeed));
+        HashMap<String, GraphNode> nodeMap = new HashMap<>();
+        List<GraphNode> graphNodes = new ArrayList<>(Jstacks.size() + Jbufferpoints.size());
+
+        for (Map<String, Object> Jobject : Jstacks) {
+            Stack stack = new Stack(new JSONObject(Jobject), stackCapacity, graphNodes.size(), boxIds);
+            Location location = new Location((int) Jobject.get("x"), (int) Jobject.get("y"));
+            GraphNode node = new GraphNode(stack, location);
+            graphNodes.add(node);
+            nodeMap.put(node.getName(), node);
+        }
+
+        for (Map<String, Object> Jobject : Jbufferpoints) {
+            Bufferpoint bufferpoint = new Bufferpoint(new JSONObject(Jobject));
+            Location location = new Location((int) Jobject.get("x"), (int) Jobject.get("y"));
+            GraphNode node = new GraphNode(bufferpoint, location);
+            graphNodes.add(node);
+            nodeMap.put(node.getName(), node);
+        }
+
+        if (cacheDirectory != null) graph.addNodes(graphNodes, cacheDirectory);
+        else graph.addNodes(graphNodes);
+
+        List<Vehicle> vehicles = new ArrayList<>();
+        for (Map<String, Object> Jobject : Jvehicles) {
+            vehicles.add(new Vehicle(new JSONObject(Jobject), vehicles.size()));
+        }
+
+        List<Request> requests = new ArrayList<>();
+        for (Map<String, Object> Jobject : Jrequests) {
+            requests.add(readRequest(new JSONObject(Jobject), nodeMap, requests.size(), boxIds));
+        }
+
+        return new Warehouse(graph, vehicles, requests, boxIds, loadingDuration, strategyOrder);
+    }
+
+    // also for the requests that come in one by one in online mode, the locations are node names
+    public static Request readRequest(JSONObject R_object, Map<String, GraphNode> nodeMap, int index, BoxIds boxIds) {
+        GraphNode pickupLocation, placeLocation;
+        // System.out.println(R_object.getJSONArray("pickupLocation").getString(0)+"  "+R_object.getJSONArray("placeLocation").getString(0));
+        try{
+            pickupLocation = nodeMap.get(R_object.getJSONArray("pickupLocation").getString(0));
+            placeLocation = nodeMap.get(R_object.getJSONArray("placeLocation").getString(0));
+        } catch (JSONException e){
+            pickupLocation = nodeMap.get(R_object.getString("pickupLocation"));
+            placeLocation = nodeMap.get(R_object.getString("placeLocation"));
+        }
+
+        int ID = R_object.getInt("ID");
+        // box names are numbered here, only the operation log has them again
+        int boxID = boxIds.of(R_object.getString("boxID"));
+        return new Request(pickupLocation, placeLocation, ID, boxID, index);
+    }
+
+    // {"x": 0, "y": 0, "width": .., "height": .., "cellsize": .., "obstacles": [{"x": .., "y": .., "width": .., "height": ..}]}
+    private static RoutingGrid readRoutingGrid(JSONObject routing, int vehicleSpeed) {
+        RoutingGrid grid = new RoutingGrid(routing.optInt("x", 0), routing.optInt("y", 0), routing.getInt("width"), routing.getInt("height"),
+                routing.getInt("cellsize"), vehicleSpeed, ROUTING_PAIR_CACHE_SIZE, ROUTING_ROW_CACHE_SIZE);
+        JSONArray obstacles = routing.optJSONArray("obstacles");
+        if (obstacles != null) {
+            for (int i = 0; i < obstacles.length(); i++) {
+                JSONObject obstacle = obstacles.getJSONObject(i);
+                grid.addObstacle(obstacle.getInt("x"), obstacle.getInt("y"), obstacle.getInt("width"), obstacle.getInt("height"));
+            }
+        }
+        return grid;
+    }
 }
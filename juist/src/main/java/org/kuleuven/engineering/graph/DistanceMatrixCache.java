@@ -0,0 +1,86 @@
+package org.kuleuven.engineering.graph;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+// travel time matrices on disk: header (magic, version, size, unused) followed by size*size little endian doubles, row-major
+public class DistanceMatrixCache {
+    private static final int MAGIC = 0x5748444D; // "WHDM"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int CHUNK_DOUBLES = 1 << 16;
+
+    // the matrix only depends on the node locations (in order) and the vehicle speed
+    public static String layoutHash(List<GraphNode> nodes, int vehicleSpeed) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            ByteBuffer buffer = ByteBuffer.allocate(12 + 8 * nodes.size());
+            buffer.putInt(VERSION).putInt(vehicleSpeed).putInt(nodes.size());
+            for (GraphNode node : nodes) {
+                buffer.putInt(node.getLocation().getX()).putInt(node.getLocation().getY());
+            }
+            return HexFormat.of().formatHex(digest.digest(buffer.array()));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static Path fileFor(Path cacheDirectory, String layoutHash) {
+        return cacheDirectory.resolve("travel-times-" + layoutHash + ".bin");
+    }
+
+    // maps the file read-only, returns null if there is no usable matrix of this size in it
+    public static DoubleBuffer load(Path file, int size) {
+        if (!Files.isRegularFile(file)) return null;
+        long expectedBytes = HEADER_BYTES + 8L * size * size;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() != expectedBytes || expectedBytes > Integer.MAX_VALUE) return null;
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, expectedBytes);
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION || mapped.getInt(8) != size) return null;
+            return mapped.slice(HEADER_BYTES, (int) (expectedBytes - HEADER_BYTES)).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+        } catch (IOException e) {
+            System.out.println(e);
+            return null;
+        }
+    }
+
+    // written to a temporary file first and then moved in place, so other processes never map a half written matrix
+    public static void store(Path file, double[] matrix, int size) {
+        if (HEADER_BYTES + 8L * size * size > Integer.MAX_VALUE) return;
+        try {
+            Files.createDirectories(file.getParent());
+            Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(0).flip();
+                while (header.hasRemaining()) channel.write(header);
+
+                ByteBuffer chunk = ByteBuffer.allocate(8 * CHUNK_DOUBLES).order(ByteOrder.LITTLE_ENDIAN);
+                int total = size * size;
+                for (int offset = 0; offset < total; offset += CHUNK_DOUBLES) {
+                    int length = Math.min(CHUNK_DOUBLES, total - offset);
+                    chunk.clear();
+                    chunk.asDoubleBuffer().put(matrix, offset, length);
+                    chunk.limit(8 * length);
+                    while (chunk.hasRemaining()) channel.write(chunk);
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println(e);
+        }
+    }
+}
@@ -1,10 +1,15 @@
 package org.kuleuven.engineering.graph;
 
+import java.nio.DoubleBuffer;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
 
 import org.kuleuven.engineering.types.Location;
 import org.kuleuven.engineering.types.Stack;
@@ -12,48 +17,207 @@ import org.kuleuven.engineering.types.Vehicle;
 
 public class Graph {
     private final List<GraphNode> nodes;
-    private double[][] adjacencyMatrix;
-    private final Map<GraphNode, List<Pair<GraphNode, Double>>> adjacencyList;
+    // travel times, row-major: travelTimes.get(i * size + j), backed by adjacencyMatrix or by a mapped cache file
+    private DoubleBuffer travelTimes;
+    // null while the travel times are read from a mapped cache file, copied to the heap on the first write
+    private double[] adjacencyMatrix;
+    private int size;
+    private static final int BLOCK_SIZE = 64;
+    // true as long as every travel time is the straight line distance
+    private boolean isEuclidean;
+    // per node the indices of all other nodes sorted on travel time, built the first time a node is queried
+    private int[][] neighbourOrder;
     public final Map<String, GraphNode> nodeMap;
+    private GraphNode[] stacksByID;
+    private SpatialGrid spatialIndex;
+    // optional: drive around obstacles instead of in straight lines, travel times are then searched lazily
+    private RoutingGrid routing;
     private final int vehicleSpeed;
 
     public Graph(int vehicleSpeed){
         this.nodes = new ArrayList<>();
-        this.adjacencyList = new HashMap<>();
+        this.neighbourOrder = new int[0][];
         this.vehicleSpeed = vehicleSpeed;
         this.nodeMap = new HashMap<>();
+        this.adjacencyMatrix = new double[0];
+        this.travelTimes = DoubleBuffer.wrap(adjacencyMatrix);
+        this.size = 0;
+        this.isEuclidean = true;
+        this.stacksByID = new GraphNode[0];
+        this.spatialIndex = new SpatialGrid(nodes);
+    }
+
+    // copy with its own nodes (and so its own stack contents) for a forked warehouse.
+    // travel times, neighbour orders, the spatial index and the routing grid are shared, a write to the matrix copies it first
+    private Graph(Graph other){
+        this.nodes = new ArrayList<>(other.nodes.size());
+        this.nodeMap = new HashMap<>();
+        for (GraphNode node : other.nodes) {
+            GraphNode copy = new GraphNode(node, node.getStorage().copy());
+            nodes.add(copy);
+            nodeMap.put(copy.getName(), copy);
+        }
+        other.adjacencyMatrix = null;
+        this.adjacencyMatrix = null;
+        this.travelTimes = other.travelTimes;
+        this.size = other.size;
+        this.isEuclidean = other.isEuclidean;
+        this.neighbourOrder = other.neighbourOrder;
+        this.routing = other.routing;
+        this.vehicleSpeed = other.vehicleSpeed;
+        this.spatialIndex = other.spatialIndex.withNodes(nodes);
+        buildStackLookup();
+    }
+
+    public Graph fork(){
+        return new Graph(this);
+    }
+
+    // the copy of a node of the graph this one was forked from
+    public GraphNode getNode(GraphNode node){
+        return nodes.get(node.getIndex());
     }
 
     public double calculateTime(Location l1, Location l2){
         return Math.sqrt(Math.pow(l2.getX() - l1.getX(), 2) + Math.pow(l2.getY() - l1.getY(), 2)) / vehicleSpeed;
     }
 
+    // use the routing grid for all travel times from now on, no dense matrix is kept
+    public void setRouting(RoutingGrid routing){
+        this.routing = routing;
+        this.isEuclidean = false;
+        if (!nodes.isEmpty()) useRouting();
+    }
+
+    private void useRouting(){
+        adjacencyMatrix = null;
+        travelTimes = null;
+        size = nodes.size();
+        routing.setNodes(nodes);
+    }
+
     public void addNode(GraphNode node){
-        if (!nodes.contains(node)) {
-            nodes.add(node);
-            nodeMap.put(node.getName(), node);
-            int n = nodes.size();
-            double[][] newMatrix = new double[n][n];
-            for (int i = 0; i < n - 1; i++) {
-                System.arraycopy(adjacencyMatrix[i], 0, newMatrix[i], 0, n - 1);
-                newMatrix[i][n - 1] = Double.POSITIVE_INFINITY;
-                newMatrix[n - 1][i] = Double.POSITIVE_INFINITY;
+        addNodes(List.of(node));
+    }
+
+    // add all nodes in one go: the matrix is grown once and every neighbour list is sorted once at the end
+    public void addNodes(List<GraphNode> newNodes){
+        int oldSize = registerNodes(newNodes);
+        if (nodes.size() == oldSize) return;
+        if (routing != null) useRouting();
+        else fillMatrix(oldSize);
+        finishNodes();
+    }
+
+    // same as addNodes, but the travel times of a layout that was built before are memory-mapped from the cache directory
+    public void addNodes(List<GraphNode> newNodes, Path cacheDirectory){
+        if (!nodes.isEmpty() || routing != null) {
+            addNodes(newNodes);
+            return;
+        }
+        registerNodes(newNodes);
+        Path file = DistanceMatrixCache.fileFor(cacheDirectory, DistanceMatrixCache.layoutHash(nodes, vehicleSpeed));
+        DoubleBuffer cached = DistanceMatrixCache.load(file, nodes.size());
+        if (cached != null) {
+            adjacencyMatrix = null;
+            travelTimes = cached;
+            size = nodes.size();
+        }
+        else {
+            fillMatrix(0);
+            DistanceMatrixCache.store(file, adjacencyMatrix, size);
+        }
+        finishNodes();
+    }
+
+    // gives new nodes their index, returns the number of nodes there were before
+    private int registerNodes(List<GraphNode> newNodes){
+        Map<Location, Integer> knownLocations = new HashMap<>();
+        for (GraphNode node : nodes) {
+            knownLocations.put(node.getLocation(), node.getIndex());
+        }
+        int oldSize = nodes.size();
+        for (GraphNode node : newNodes) {
+            Integer existing = knownLocations.putIfAbsent(node.getLocation(), nodes.size());
+            if (existing == null) {
+                node.setIndex(nodes.size());
+                nodes.add(node);
+                nodeMap.put(node.getName(), node);
             }
-            adjacencyMatrix = newMatrix;
-            adjacencyMatrix[n - 1][n - 1] = 0; // Set self distance to 0
-
-            for (int i = 0; i < n - 1; i++) {
-                double distance = calculateTime(node.getLocation(), nodes.get(i).getLocation());
-                adjacencyMatrix[n - 1][i] = distance;
-                adjacencyMatrix[i][n - 1] = distance;
-                adjacencyList.computeIfAbsent(nodes.get(i), k -> new ArrayList<>()).add(new Pair<>(node, distance));
-                adjacencyList.computeIfAbsent(node, k -> new ArrayList<>()).add(new Pair<>(nodes.get(i), distance));
+            else node.setIndex(existing); // same location as a known node, share its row in the matrix
+        }
+        return oldSize;
+    }
+
+    private void fillMatrix(int oldSize){
+        int n = nodes.size();
+        double[] newMatrix = new double[n * n];
+        for (int i = 0; i < oldSize; i++) {
+            travelTimes.get(i * oldSize, newMatrix, i * n, oldSize);
+        }
+        for (int i = oldSize; i < n; i++) {
+            Location location = nodes.get(i).getLocation();
+            for (int j = 0; j < i; j++) {
+                double distance = calculateTime(location, nodes.get(j).getLocation());
+                newMatrix[i * n + j] = distance;
+                newMatrix[j * n + i] = distance;
             }
+            newMatrix[i * n + i] = 0; // Set self distance to 0
+        }
+        adjacencyMatrix = newMatrix;
+        travelTimes = DoubleBuffer.wrap(newMatrix);
+        size = n;
+    }
 
-            for (List<Pair<GraphNode, Double>> neighbors : adjacencyList.values()) {
-                neighbors.sort(Comparator.comparingDouble(pair -> pair.y));
+    private void finishNodes(){
+        neighbourOrder = new int[size][];
+        buildStackLookup();
+        spatialIndex = new SpatialGrid(nodes);
+    }
+
+    private void buildStackLookup() {
+        int maxID = -1;
+        for (GraphNode node : nodes) {
+            if (node.getStorage() instanceof Stack stack) maxID = Math.max(maxID, stack.getID());
+        }
+        stacksByID = new GraphNode[maxID + 1];
+        for (GraphNode node : nodes) {
+            if (node.getStorage() instanceof Stack stack) stacksByID[stack.getID()] = node;
+        }
+    }
+
+    private int[] getNeighbourOrder(int i) {
+        int[] order = neighbourOrder[i];
+        if (order == null) {
+            Integer[] neighbours = new Integer[size - 1];
+            for (int j = 0, k = 0; j < size; j++) {
+                if (j != i) neighbours[k++] = j;
+            }
+            // stable sort, so nodes at the same travel time stay in the order they were added
+            if (routing != null) {
+                double[] row = routing.travelTimes(i);
+                Arrays.sort(neighbours, Comparator.comparingDouble(j -> row[j]));
             }
+            else {
+                int row = i * size;
+                Arrays.sort(neighbours, Comparator.comparingDouble(j -> travelTimes.get(row + j)));
+            }
+            order = new int[size - 1];
+            for (int k = 0; k < order.length; k++) {
+                order[k] = neighbours[k];
+            }
+            neighbourOrder[i] = order;
+        }
+        return order;
+    }
+
+    // closest node (in travel time) from the given node for which the filter holds, the node itself is never returned
+    public GraphNode findClosestNode(GraphNode from, Predicate<GraphNode> filter) {
+        for (int j : getNeighbourOrder(from.getIndex())) {
+            GraphNode node = nodes.get(j);
+            if (filter.test(node)) return node;
         }
+        return null;
     }
 
     public List<GraphNode> getNodes() {
@@ -61,27 +225,127 @@ public class Graph {
     }
 
     public Pair<GraphNode, Double> getClosestNode(Location location) {
-        GraphNode closestNode = null;
-        double minDistance = Double.POSITIVE_INFINITY;
+        return getClosestNode(location, node -> true);
+    }
 
+    // the spatial index only knows straight lines. with a routing grid or changed travel times the candidates are checked by their
+    // real travel time: routes are never shorter than the straight line, a changed time can be, so then every node is a candidate
+
+    // closest node by travel time for which the filter holds, e.g. node -> node.getStorage() instanceof Stack stack && !stack.isFull()
+    public Pair<GraphNode, Double> getClosestNode(Location location, Predicate<GraphNode> filter) {
+        if (isEuclidean) {
+            GraphNode closestNode = spatialIndex.nearest(location, filter);
+            if (closestNode == null) return new Pair<>(null, Double.POSITIVE_INFINITY);
+            return new Pair<>(closestNode, calculateTime(closestNode.getLocation(), location));
+        }
+        GraphNode closestNode = null;
+        double closestTime = Double.POSITIVE_INFINITY;
         for (GraphNode node : nodes) {
-            double distance = calculateTime(node.getLocation(), location);
-            if (distance < minDistance) {
-                minDistance = distance;
+            if (!filter.test(node)) continue;
+            // no route can beat the straight line to this node
+            if (routing != null && calculateTime(location, node.getLocation()) >= closestTime) continue;
+            double time = travelTime(location, node);
+            if (time < closestTime) {
                 closestNode = node;
+                closestTime = time;
             }
         }
+        return new Pair<>(closestNode, closestTime);
+    }
+
+    // the k closest nodes by travel time for which the filter holds, closest first
+    public List<GraphNode> getClosestNodes(Location location, int k, Predicate<GraphNode> filter) {
+        if (isEuclidean) return spatialIndex.kNearest(location, k, filter);
+        List<GraphNode> candidates = new ArrayList<>();
+        for (GraphNode node : nodes) {
+            if (filter.test(node)) candidates.add(node);
+        }
+        candidates.sort(Comparator.comparingDouble(node -> travelTime(location, node)));
+        return new ArrayList<>(candidates.subList(0, Math.min(k, candidates.size())));
+    }
 
-        return new Pair<>(closestNode, minDistance);
+    // all nodes for which the filter holds that can be reached from the location within the given travel time
+    public List<GraphNode> getNodesWithinTravelTime(Location location, double travelTime, Predicate<GraphNode> filter) {
+        if (isEuclidean) return spatialIndex.withinRadius(location, travelTime * vehicleSpeed, filter);
+        List<GraphNode> candidates = routing != null ? spatialIndex.withinRadius(location, travelTime * vehicleSpeed, filter) : nodes;
+        List<GraphNode> reachable = new ArrayList<>();
+        for (GraphNode node : candidates) {
+            if (filter.test(node) && travelTime(location, node) <= travelTime) reachable.add(node);
+        }
+        return reachable;
+    }
+
+    // travel time from any location: routed, or through the node at that location when the times were changed, else the straight line
+    private double travelTime(Location location, GraphNode node) {
+        if (routing != null) return routing.travelTime(location, node.getLocation());
+        if (!isEuclidean) {
+            GraphNode at = spatialIndex.nearest(location, candidate -> candidate.getLocation().equals(location));
+            if (at != null) return getTravelTime(at, node);
+        }
+        return calculateTime(location, node.getLocation());
     }
 
+    // overwrite the direct travel time between two nodes (e.g. a wall or a corridor), call calculateAllDistances afterwards
+    public void setTravelTime(GraphNode node1, GraphNode node2, double time) {
+        if (routing != null) throw new IllegalStateException("travel times come from the routing grid");
+        makeMatrixWritable();
+        adjacencyMatrix[node1.getIndex() * size + node2.getIndex()] = time;
+        adjacencyMatrix[node2.getIndex() * size + node1.getIndex()] = time;
+        isEuclidean = false;
+    }
+
+    // blocked Floyd-Warshall: per k-block first the diagonal tile, then its row and column tiles, then all other tiles;
+    // the tiles within one phase are independent and run on the common ForkJoinPool
     public void calculateAllDistances() {
-        int n = nodes.size();
-        for (int k = 0; k < n; k++) {
-            for (int i = 0; i < n; i++) {
-                for (int j = 0; j < n; j++) {
-                    if (adjacencyMatrix[i][j] > adjacencyMatrix[i][k] + adjacencyMatrix[k][j]) {
-                        adjacencyMatrix[i][j] = adjacencyMatrix[i][k] + adjacencyMatrix[k][j];
+        // straight lines already satisfy the triangle inequality, nothing can get shorter
+        // the routing grid only returns shortest paths
+        if (isEuclidean || routing != null) return;
+
+        makeMatrixWritable();
+        int n = size;
+        int blocks = (n + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        for (int kb = 0; kb < blocks; kb++) {
+            final int k = kb;
+            updateBlock(k, k, k);
+
+            IntStream.range(0, blocks).parallel().filter(b -> b != k).forEach(b -> {
+                updateBlock(k, b, k);
+                updateBlock(b, k, k);
+            });
+
+            IntStream.range(0, blocks * blocks).parallel().forEach(b -> {
+                int ib = b / blocks;
+                int jb = b % blocks;
+                if (ib != k && jb != k) updateBlock(ib, jb, k);
+            });
+        }
+        neighbourOrder = new int[size][];
+    }
+
+    private void makeMatrixWritable() {
+        if (adjacencyMatrix == null) {
+            adjacencyMatrix = new double[size * size];
+            travelTimes.get(0, adjacencyMatrix);
+            travelTimes = DoubleBuffer.wrap(adjacencyMatrix);
+        }
+    }
+
+    private void updateBlock(int ib, int jb, int kb) {
+        int n = size;
+        int iEnd = Math.min(n, (ib + 1) * BLOCK_SIZE);
+        int jStart = jb * BLOCK_SIZE;
+        int jEnd = Math.min(n, jStart + BLOCK_SIZE);
+        int kEnd = Math.min(n, (kb + 1) * BLOCK_SIZE);
+        for (int k = kb * BLOCK_SIZE; k < kEnd; k++) {
+            int kRow = k * n;
+            for (int i = ib * BLOCK_SIZE; i < iEnd; i++) {
+                int iRow = i * n;
+                double viaK = adjacencyMatrix[iRow + k];
+                if (viaK == Double.POSITIVE_INFINITY) continue;
+                for (int j = jStart; j < jEnd; j++) {
+                    double distance = viaK + adjacencyMatrix[kRow + j];
+                    if (adjacencyMatrix[iRow + j] > distance) {
+                        adjacencyMatrix[iRow + j] = distance;
                     }
                 }
             }
@@ -89,15 +353,19 @@ public class Graph {
     }
 
     public double getTravelTime(GraphNode node1, GraphNode node2) {
-        int index1 = nodes.indexOf(node1);
-        int index2 = nodes.indexOf(node2);
-        return adjacencyMatrix[index1][index2];
+        return travelTime(node1.getIndex(), node2.getIndex());
+    }
+
+    private double travelTime(int i, int j) {
+        if (routing != null) return routing.travelTime(i, j);
+        return travelTimes.get(i * size + j);
     }
 
     public double getTravelTime(Vehicle vehicle, GraphNode node){
         if(vehicle.currentNode!=null){
             return getTravelTime(vehicle.currentNode, node);
         }
+        if (routing != null) return routing.travelTime(vehicle.getLocation(), node.getLocation());
         return calculateTime(vehicle.getLocation(), node.getLocation());
     }
 
@@ -140,11 +408,10 @@ public class Graph {
         for (GraphNode node : nodes) {
             maxWidth = Math.max(maxWidth, node.getName().length());
         }
-        for (double[] row : adjacencyMatrix) {
-            for (double value : row) {
-                if (value != Double.POSITIVE_INFINITY) {
-                    maxWidth = Math.max(maxWidth, String.format("%.2f", value).length());
-                }
+        for (int i = 0; i < size * size; i++) {
+            double value = travelTime(i / size, i % size);
+            if (value != Double.POSITIVE_INFINITY) {
+                maxWidth = Math.max(maxWidth, String.format("%.2f", value).length());
             }
         }
         maxWidth += 2;
@@ -155,13 +422,13 @@ public class Graph {
         }
         sb.append("\n");
 
-        for (int i = 0; i < adjacencyMatrix.length; i++) {
+        for (int i = 0; i < size; i++) {
             sb.append(String.format("%-" + maxWidth + "s", nodes.get(i).getName()));
-            for (int j = 0; j < adjacencyMatrix[i].length; j++) {
-                if (adjacencyMatrix[i][j] == Double.POSITIVE_INFINITY) {
+            for (int j = 0; j < size; j++) {
+                if (travelTime(i, j) == Double.POSITIVE_INFINITY) {
                     sb.append(String.format("%-" + maxWidth + "s", "INF"));
                 } else {
-                    sb.append(String.format("%-" + maxWidth + ".2f", adjacencyMatrix[i][j]));
+                    sb.append(String.format("%-" + maxWidth + ".2f", travelTime(i, j)));
                 }
             }
             sb.append("\n");
@@ -171,12 +438,8 @@ public class Graph {
     }
 
     public GraphNode getStackByID(int id){
-        for (GraphNode node : nodes){
-            if (node.getStorage() instanceof Stack stack && stack.getID() == id){
-                return node;
-            }
-        }
-        return null;
+        if (id < 0 || id >= stacksByID.length) return null;
+        return stacksByID[id];
     }
 
 }
@@ -8,12 +8,20 @@ public class GraphNode {
     private final boolean isBuffer;
     private final IStorage storage;
     private final Location location;
+    private int index = -1;
 
     public GraphNode(IStorage storage, Location location){
         this.location = location;
         this.storage = storage;
         this.isBuffer = storage instanceof Bufferpoint;
     }
+    // same node with a copy of the storage, for a forked graph
+    GraphNode(GraphNode other, IStorage storage){
+        this.location = other.location;
+        this.storage = storage;
+        this.isBuffer = other.isBuffer;
+        this.index = other.index;
+    }
     public String getName() {
         return storage.getName();
     }
@@ -26,6 +34,13 @@ public class GraphNode {
     public IStorage getStorage() {
         return storage;
     }
+    // position of this node in the travel time matrix, assigned by the graph
+    public int getIndex() {
+        return index;
+    }
+    void setIndex(int index) {
+        this.index = index;
+    }
 
     @Override
     public boolean equals(Object o) {
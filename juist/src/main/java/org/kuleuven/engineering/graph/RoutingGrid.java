@@ -0,0 +1,259 @@
+package org.kuleuven.engineering.graph;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.kuleuven.engineering.types.Location;
+
+// grid of the warehouse floor in which vehicles drive around obstacles (racks, walls), 8-connected without cutting corners.
+// travel times between nodes are searched lazily: single pairs with A*, whole rows (one node to all others) with Dijkstra,
+// both are kept in a least recently used cache so no dense all-pairs matrix is needed.
+// forked warehouses share one grid, so the searches (which reuse their state) are synchronized
+public class RoutingGrid {
+    private static final double DIAGONAL = Math.sqrt(2);
+    private static final int[] DX = {1, -1, 0, 0, 1, 1, -1, -1};
+    private static final int[] DY = {0, 0, 1, -1, 1, -1, 1, -1};
+
+    private final int originX;
+    private final int originY;
+    private final int cellSize;
+    private final int columns;
+    private final int rows;
+    private final boolean[] blocked;
+    private final int vehicleSpeed;
+    private int[] nodeCells = new int[0];
+
+    private final LinkedHashMap<Long, Double> pairCache;
+    private final LinkedHashMap<Integer, double[]> rowCache;
+
+    // search state, reused between searches (visited when stamp == search)
+    private final double[] cost;
+    private final int[] stamp;
+    private final boolean[] settled;
+    private int search = 0;
+    private final CellHeap heap = new CellHeap();
+
+    public RoutingGrid(int originX, int originY, int width, int height, int cellSize, int vehicleSpeed, int pairCacheSize, int rowCacheSize) {
+        if (cellSize <= 0 || width <= 0 || height <= 0) throw new IllegalArgumentException("Routing grid needs a positive size");
+        this.originX = originX;
+        this.originY = originY;
+        this.cellSize = cellSize;
+        this.columns = (width + cellSize - 1) / cellSize;
+        this.rows = (height + cellSize - 1) / cellSize;
+        this.vehicleSpeed = vehicleSpeed;
+        this.blocked = new boolean[columns * rows];
+        this.cost = new double[columns * rows];
+        this.stamp = new int[columns * rows];
+        this.settled = new boolean[columns * rows];
+        this.pairCache = lruCache(pairCacheSize);
+        this.rowCache = lruCache(rowCacheSize);
+    }
+
+    private static <K, V> LinkedHashMap<K, V> lruCache(int capacity) {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    // block every cell that overlaps the rectangle (world coordinates)
+    public synchronized void addObstacle(int x, int y, int width, int height) {
+        int x0 = column(x), x1 = column(x + width - 1);
+        int y0 = row(y), y1 = row(y + height - 1);
+        for (int cy = y0; cy <= y1; cy++) {
+            for (int cx = x0; cx <= x1; cx++) {
+                blocked[cy * columns + cx] = true;
+            }
+        }
+        clearCaches();
+    }
+
+    // the cells of the graph nodes, a node is always reachable even if it lies against a rack
+    synchronized void setNodes(List<GraphNode> nodes) {
+        nodeCells = new int[nodes.size()];
+        for (int i = 0; i < nodes.size(); i++) {
+            nodeCells[i] = cellOf(nodes.get(i).getLocation());
+            blocked[nodeCells[i]] = false;
+        }
+        clearCaches();
+    }
+
+    private void clearCaches() {
+        pairCache.clear();
+        rowCache.clear();
+    }
+
+    private int column(int x) {
+        return Math.clamp(Math.floorDiv((long) x - originX, cellSize), 0, columns - 1);
+    }
+    private int row(int y) {
+        return Math.clamp(Math.floorDiv((long) y - originY, cellSize), 0, rows - 1);
+    }
+    private int cellOf(Location location) {
+        return row(location.getY()) * columns + column(location.getX());
+    }
+
+    public synchronized double travelTime(int node1, int node2) {
+        if (node1 == node2) return 0;
+        double[] row = rowCache.get(node1);
+        if (row != null) return row[node2];
+        row = rowCache.get(node2);
+        if (row != null) return row[node1];
+
+        long key = ((long) Math.min(node1, node2) << 32) | Math.max(node1, node2);
+        Double time = pairCache.get(key);
+        if (time == null) {
+            time = aStar(nodeCells[node1], nodeCells[node2]) / vehicleSpeed;
+            pairCache.put(key, time);
+        }
+        return time;
+    }
+
+    // not cached, for vehicles that are not at a node
+    public synchronized double travelTime(Location from, Location to) {
+        return aStar(cellOf(from), cellOf(to)) / vehicleSpeed;
+    }
+
+    // travel times from one node to every node
+    public synchronized double[] travelTimes(int node) {
+        double[] row = rowCache.get(node);
+        if (row == null) {
+            row = dijkstra(nodeCells[node]);
+            rowCache.put(node, row);
+        }
+        return row;
+    }
+
+    private double heuristic(int cell, int target) {
+        int dx = Math.abs(cell % columns - target % columns);
+        int dy = Math.abs(cell / columns - target / columns);
+        return ((double) Math.max(dx, dy) - Math.min(dx, dy) + DIAGONAL * Math.min(dx, dy)) * cellSize;
+    }
+
+    private double aStar(int from, int to) {
+        if (from == to) return 0;
+        startSearch(from);
+        heap.push(heuristic(from, to), from);
+        while (!heap.isEmpty()) {
+            int cell = heap.popCell();
+            if (settled[cell]) continue;
+            if (cell == to) return cost[cell];
+            settled[cell] = true;
+            relaxNeighbours(cell, to);
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    private double[] dijkstra(int from) {
+        // several nodes can share a cell, count the cells that still have to be reached
+        int remaining = 0;
+        Map<Integer, Integer> targets = new HashMap<>();
+        for (int cell : nodeCells) {
+            if (targets.merge(cell, 1, Integer::sum) == 1) remaining++;
+        }
+
+        startSearch(from);
+        heap.push(0, from);
+        while (!heap.isEmpty() && remaining > 0) {
+            int cell = heap.popCell();
+            if (settled[cell]) continue;
+            settled[cell] = true;
+            if (targets.containsKey(cell)) remaining--;
+            relaxNeighbours(cell, -1);
+        }
+
+        double[] row = new double[nodeCells.length];
+        for (int j = 0; j < nodeCells.length; j++) {
+            int cell = nodeCells[j];
+            row[j] = stamp[cell] == search && settled[cell] ? cost[cell] / vehicleSpeed : Double.POSITIVE_INFINITY;
+        }
+        return row;
+    }
+
+    private void startSearch(int from) {
+        search++;
+        heap.clear();
+        stamp[from] = search;
+        cost[from] = 0;
+        settled[from] = false;
+    }
+
+    // target -1 means no heuristic (Dijkstra)
+    private void relaxNeighbours(int cell, int target) {
+        int cx = cell % columns;
+        int cy = cell / columns;
+        for (int d = 0; d < DX.length; d++) {
+            int nx = cx + DX[d];
+            int ny = cy + DY[d];
+            if (nx < 0 || ny < 0 || nx >= columns || ny >= rows) continue;
+            int next = ny * columns + nx;
+            if (blocked[next]) continue;
+            // diagonal moves may not cut the corner of a blocked cell
+            if (d >= 4 && (blocked[cy * columns + nx] || blocked[ny * columns + cx])) continue;
+
+            double newCost = cost[cell] + (d >= 4 ? DIAGONAL : 1) * cellSize;
+            if (stamp[next] != search) {
+                stamp[next] = search;
+                settled[next] = false;
+                cost[next] = Double.POSITIVE_INFINITY;
+            }
+            if (!settled[next] && newCost < cost[next]) {
+                cost[next] = newCost;
+                heap.push(target < 0 ? newCost : newCost + heuristic(next, target), next);
+            }
+        }
+    }
+
+    // binary min heap on (key, cell) in primitive arrays, stale entries are skipped by the caller
+    private static class CellHeap {
+        private double[] keys = new double[64];
+        private int[] cells = new int[64];
+        private int size = 0;
+
+        void clear() {
+            size = 0;
+        }
+        boolean isEmpty() {
+            return size == 0;
+        }
+        void push(double key, int cell) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                cells = Arrays.copyOf(cells, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (keys[parent] <= key) break;
+                keys[i] = keys[parent];
+                cells[i] = cells[parent];
+                i = parent;
+            }
+            keys[i] = key;
+            cells[i] = cell;
+        }
+        int popCell() {
+            int top = cells[0];
+            size--;
+            double key = keys[size];
+            int cell = cells[size];
+            int i = 0;
+            while (2 * i + 1 < size) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && keys[child + 1] < keys[child]) child++;
+                if (keys[child] >= key) break;
+                keys[i] = keys[child];
+                cells[i] = cells[child];
+                i = child;
+            }
+            keys[i] = key;
+            cells[i] = cell;
+            return top;
+        }
+    }
+}
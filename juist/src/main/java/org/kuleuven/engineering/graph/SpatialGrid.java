@@ -0,0 +1,181 @@
+package org.kuleuven.engineering.graph;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+
+import org.kuleuven.engineering.types.Location;
+
+// uniform grid over the node locations, cells are stored compactly (cellStart/cellNodes) and searched ring by ring
+public class SpatialGrid {
+    private final List<GraphNode> nodes;
+    private final int minX;
+    private final int minY;
+    private final int cellSize;
+    private final int columns;
+    private final int rows;
+    private final int[] cellStart;
+    private final int[] cellNodes;
+
+    public SpatialGrid(List<GraphNode> nodes) {
+        this.nodes = nodes;
+        int n = nodes.size();
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for (GraphNode node : nodes) {
+            minX = Math.min(minX, node.getLocation().getX());
+            minY = Math.min(minY, node.getLocation().getY());
+            maxX = Math.max(maxX, node.getLocation().getX());
+            maxY = Math.max(maxY, node.getLocation().getY());
+        }
+        if (n == 0) {
+            minX = minY = maxX = maxY = 0;
+        }
+        this.minX = minX;
+        this.minY = minY;
+        // aim for about two nodes per cell
+        long width = (long) maxX - minX + 1;
+        long height = (long) maxY - minY + 1;
+        // (but never more than 2n+1 cells along the long side of a thin layout)
+        this.cellSize = (int) Math.max(Math.ceil(Math.sqrt(2.0 * width * height / Math.max(1, n))),
+                Math.ceil(Math.max(width, height) / (2.0 * n + 1)));
+        this.columns = (int) ((width + cellSize - 1) / cellSize);
+        this.rows = (int) ((height + cellSize - 1) / cellSize);
+
+        // counting sort of the nodes by cell
+        this.cellStart = new int[columns * rows + 1];
+        this.cellNodes = new int[n];
+        int[] cellOfNode = new int[n];
+        for (int i = 0; i < n; i++) {
+            cellOfNode[i] = cellOf(nodes.get(i).getLocation());
+            cellStart[cellOfNode[i] + 1]++;
+        }
+        for (int c = 0; c < columns * rows; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        int[] fill = new int[columns * rows];
+        for (int i = 0; i < n; i++) {
+            cellNodes[cellStart[cellOfNode[i]] + fill[cellOfNode[i]]++] = i;
+        }
+    }
+
+    // same grid over other node objects at the same positions (a forked graph)
+    private SpatialGrid(SpatialGrid other, List<GraphNode> nodes) {
+        this.nodes = nodes;
+        this.minX = other.minX;
+        this.minY = other.minY;
+        this.cellSize = other.cellSize;
+        this.columns = other.columns;
+        this.rows = other.rows;
+        this.cellStart = other.cellStart;
+        this.cellNodes = other.cellNodes;
+    }
+
+    public SpatialGrid withNodes(List<GraphNode> nodes) {
+        return new SpatialGrid(this, nodes);
+    }
+
+    private int column(int x) {
+        return Math.clamp(Math.floorDiv((long) x - minX, cellSize), 0, columns - 1);
+    }
+    private int row(int y) {
+        return Math.clamp(Math.floorDiv((long) y - minY, cellSize), 0, rows - 1);
+    }
+    private int cellOf(Location location) {
+        return row(location.getY()) * columns + column(location.getX());
+    }
+
+    private static long squaredDistance(Location l1, Location l2) {
+        long dx = (long) l1.getX() - l2.getX();
+        long dy = (long) l1.getY() - l2.getY();
+        return dx * dx + dy * dy;
+    }
+
+    // squared distance from the location to the outside of the square of cells around (cx, cy) with radius ring,
+    // every cell that is not inside that square is at least this far away
+    private double ringBound(Location location, int cx, int cy, int ring) {
+        double left = location.getX() - ((double) minX + (double) (cx - ring) * cellSize);
+        double right = ((double) minX + (double) (cx + ring + 1) * cellSize) - location.getX();
+        double bottom = location.getY() - ((double) minY + (double) (cy - ring) * cellSize);
+        double top = ((double) minY + (double) (cy + ring + 1) * cellSize) - location.getY();
+        double bound = Math.max(0, Math.min(Math.min(left, right), Math.min(bottom, top)));
+        return bound * bound;
+    }
+
+    private boolean coversGrid(int cx, int cy, int ring) {
+        return cx - ring <= 0 && cy - ring <= 0 && cx + ring >= columns - 1 && cy + ring >= rows - 1;
+    }
+
+    // closest node accepted by the filter, ties go to the node that was added first
+    public GraphNode nearest(Location location, Predicate<GraphNode> filter) {
+        List<GraphNode> result = kNearest(location, 1, filter);
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    // the k closest nodes accepted by the filter, closest first
+    public List<GraphNode> kNearest(Location location, int k, Predicate<GraphNode> filter) {
+        List<GraphNode> result = new ArrayList<>();
+        if (k <= 0 || nodes.isEmpty()) return result;
+
+        // max heap on (distance, index) so the worst candidate is on top
+        PriorityQueue<long[]> best = new PriorityQueue<>((a, b) -> a[0] != b[0] ? Long.compare(b[0], a[0]) : Long.compare(b[1], a[1]));
+        int cx = column(location.getX());
+        int cy = row(location.getY());
+        for (int ring = 0; ; ring++) {
+            for (int y = cy - ring; y <= cy + ring; y++) {
+                if (y < 0 || y >= rows) continue;
+                boolean edgeRow = y == cy - ring || y == cy + ring;
+                for (int x = cx - ring; x <= cx + ring; x += edgeRow ? 1 : 2 * ring) {
+                    if (x >= 0 && x < columns) {
+                        int cell = y * columns + x;
+                        for (int c = cellStart[cell]; c < cellStart[cell + 1]; c++) {
+                            int index = cellNodes[c];
+                            GraphNode node = nodes.get(index);
+                            if (!filter.test(node)) continue;
+                            long distance = squaredDistance(location, node.getLocation());
+                            if (best.size() < k) best.add(new long[]{distance, index});
+                            else {
+                                long[] worst = best.peek();
+                                if (distance < worst[0] || (distance == worst[0] && index < worst[1])) {
+                                    best.poll();
+                                    best.add(new long[]{distance, index});
+                                }
+                            }
+                        }
+                    }
+                    if (ring == 0) break;
+                }
+            }
+            if (coversGrid(cx, cy, ring)) break;
+            if (best.size() == k && best.peek()[0] < ringBound(location, cx, cy, ring)) break;
+        }
+
+        while (!best.isEmpty()) {
+            result.add(nodes.get((int) best.poll()[1]));
+        }
+        return result.reversed();
+    }
+
+    // all nodes accepted by the filter within the given distance, in no particular order
+    public List<GraphNode> withinRadius(Location location, double radius, Predicate<GraphNode> filter) {
+        List<GraphNode> result = new ArrayList<>();
+        if (nodes.isEmpty() || radius < 0) return result;
+        double squaredRadius = radius * radius;
+        int x0 = column((int) Math.max(Integer.MIN_VALUE, Math.floor(location.getX() - radius)));
+        int x1 = column((int) Math.min(Integer.MAX_VALUE, Math.ceil(location.getX() + radius)));
+        int y0 = row((int) Math.max(Integer.MIN_VALUE, Math.floor(location.getY() - radius)));
+        int y1 = row((int) Math.min(Integer.MAX_VALUE, Math.ceil(location.getY() + radius)));
+        for (int y = y0; y <= y1; y++) {
+            for (int x = x0; x <= x1; x++) {
+                int cell = y * columns + x;
+                for (int c = cellStart[cell]; c < cellStart[cell + 1]; c++) {
+                    GraphNode node = nodes.get(cellNodes[c]);
+                    if (squaredDistance(location, node.getLocation()) <= squaredRadius && filter.test(node)) {
+                        result.add(node);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -2,13 +2,11 @@ package org.kuleuven.engineering.scheduling;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.function.Predicate;
 
 import org.kuleuven.engineering.RequestDistribution;
 import org.kuleuven.engineering.RequestHandling;
 import org.kuleuven.engineering.Warehouse;
 import org.kuleuven.engineering.graph.GraphNode;
-import org.kuleuven.engineering.types.Location;
 import org.kuleuven.engineering.types.REQUEST_STATUS;
 import org.kuleuven.engineering.types.Request;
 import org.kuleuven.engineering.types.Stack;
@@ -49,20 +47,19 @@ public class BufferToStackSchedulingStrategy extends SchedulingStrategy {
         boolean allRequestsDone = false;
         List<Vehicle> vehicles = warehouse.getVehicles();
 
-        while (!allRequestsDone){
+        while (!allRequestsDone && !warehouse.shouldStop()){
             final double currentTime = warehouse.getCurrentTime();
-            warehouse.getActiveRelocations().removeIf(x -> x[3] < currentTime);
+            warehouse.getActiveRelocations().removeEndedBefore(currentTime);
 
             for (Vehicle vehicle : vehicles){
+                // a vehicle without work takes over a stack of the busiest vehicle
+                if (vehicle.isAvailable(currentTime) && isIdle(vehicle)) {
+                    requestDistributor.stealFor(vehicle, false, currentTime, warehouse.getStackReservations(), null);
+                }
                 if (vehicle.isAvailable(currentTime) && (!vehicle.getRequests().isEmpty() || !vehicle.getOpenRequests().isEmpty())){
                     if (!vehicle.getRequests().isEmpty() && vehicle.getOpenRequests().isEmpty()){
                         // open requests with same destination
-                        Location dest = vehicle.getRequests().get(0).getPlaceLocation().getLocation();
-                        List<Request> requestsWithSameDest = vehicle.getRequests().stream().filter(x -> {return x.getPlaceLocation().getLocation() == dest;}).toList();
-                        for (Request request : requestsWithSameDest){
-                            vehicle.addOpenRequest(request);
-                            vehicle.getRequests().remove(request);
-                        }
+                        vehicle.openRequestsWithSameDest();
                     }
 
                     // calculate how much space is still needed on dest stack
@@ -71,9 +68,13 @@ public class BufferToStackSchedulingStrategy extends SchedulingStrategy {
                     int freeSpace = stack.getFreeSpace();
                     int requiredExtraCapacity = neededCapacity - freeSpace;
 
-                    if (vehicle.getCurrentRequestID() == -1 && requiredExtraCapacity > 0){
+                    // also while carrying a box for the stack: online, another vehicle can take space on it in the meantime
+                    boolean canCarryMore = vehicle.getCarriedBoxesCount() < vehicle.getCapacity();
+                    if (requiredExtraCapacity > 0 && vehicle.getOpenSimulatedRequests().isEmpty() && canCarryMore){
                         // make simulated request to move topbox to tempstack to make space on dest stack
                         makeSimulatedRequest(vehicle, stack);
+                        // every temp stack is reserved for now, try again next tick
+                        if (vehicle.getOpenSimulatedRequests().isEmpty()) continue;
                         Request request = vehicle.getOpenSimulatedRequests().get(0);
                         requestHandler.handleRequest(vehicle, request, currentTime > 0 ? currentTime-1 : 0, 0);
                     }
@@ -82,7 +83,10 @@ public class BufferToStackSchedulingStrategy extends SchedulingStrategy {
                         // finish simulated requests
                         Request request = vehicle.getOpenSimulatedRequests().get(0);
                         requestHandler.handleRequest(vehicle, request, currentTime > 0 ? currentTime-1 : 0, 0);
-                        if (request.isDone()) vehicle.closeSimulatedRequest(request);
+                        if (request.isDone()) {
+                            vehicle.closeSimulatedRequest(request);
+                            reopenPlacedRequest(vehicle, request);
+                        }
                     }
 
                     else if (vehicle.getCurrentRequestID() == -1 && requiredExtraCapacity <= 0 && !vehicle.getOpenRequests().isEmpty()) {
@@ -95,20 +99,20 @@ public class BufferToStackSchedulingStrategy extends SchedulingStrategy {
 
                     else if (vehicle.getCurrentRequestID() != -1 && requiredExtraCapacity <= 0 && !vehicle.getOpenRequests().isEmpty()){
                         // if box of first request is picked up, check if another box can be picked up
-                        Request currentRequest = vehicle.getOpenRequests().stream().filter(x -> x.getID() == vehicle.getCurrentRequestID()).toList().get(0);
+                        Request currentRequest = vehicle.getOpenRequest(vehicle.getCurrentRequestID());
                         Request nextRequest = findNextRequest(vehicle, currentRequest);
 
                         if (nextRequest != null){
                             vehicle.setCurrentRequestID(nextRequest.getID());
-                            currentRequest = vehicle.getOpenRequests().stream().filter(x -> x.getID() == vehicle.getCurrentRequestID()).toList().get(0);
+                            currentRequest = nextRequest;
                         }
 
                         // handle current request
                         requestHandler.handleRequest(vehicle, currentRequest, currentTime > 0 ? currentTime-1 : 0, 0);
                         if (currentRequest.isDone()){
                             // handle finished request
-                            List<Request> openRequests = vehicle.getOpenRequests().stream().filter(x -> vehicle.hasBox(x.getBoxID())).toList();
-                            if (!openRequests.isEmpty()) vehicle.closeRequestLastRound(currentRequest, openRequests.get(0).getID());
+                            Request carriedRequest = vehicle.getFirstOpenRequestWithCarriedBox();
+                            if (carriedRequest != null) vehicle.closeRequestLastRound(currentRequest, carriedRequest.getID());
                             else vehicle.closeRequest(currentRequest);
                         }
                     }
@@ -118,10 +122,19 @@ public class BufferToStackSchedulingStrategy extends SchedulingStrategy {
 
             
             allRequestsDone = checkIfAllRequestsDone();
-            if (!allRequestsDone) warehouse.incrementCurrentTime();
+            if (!allRequestsDone) warehouse.advanceToNextEvent();
         }
     }
 
+    @Override
+    public boolean offer(Request request) {
+        if (!request.getPickupLocation().isBuffer() || request.getPlaceLocation().isBuffer()) return false;
+        // opened together with the other pending requests to the same stack
+        Vehicle vehicle = requestDistributor.findVehicleFor(request, false);
+        vehicle.insertRequests(vehicle.getRequests().size(), List.of(request));
+        return true;
+    }
+
     private List<Request> findBufferToStackRequests() {
         List<Request> bufferToStackRequests = new ArrayList<>();
         for (Request request : new ArrayList<>(warehouse.getRequests())) {
@@ -150,15 +163,17 @@ public class BufferToStackSchedulingStrategy extends SchedulingStrategy {
             }
         }
         if (totalFreeSpace < requestsCopy.size()){
-            System.out.println("not enough space for requests");
+            if (warehouse.isVerbose()) System.out.println("not enough space for requests");
             return false;
         }
         return true;
     }
     private void makeSimulatedRequest(Vehicle vehicle, Stack stack){
+        // more requests for this stack than it can hold, every box on it was already moved away
+        if (stack.getBoxesSize() == 0) return;
         GraphNode src = vehicle.getOpenRequests().get(0).getPickupLocation();
         GraphNode dest = vehicle.getOpenRequests().get(0).getPlaceLocation();
-        List<GraphNode> tempstacks = warehouse.findNStorage(1, src, dest, REQUEST_STATUS.SIMULATED, vehicle);
+        List<GraphNode> tempstacks = warehouse.findNStorage(1, src, dest, REQUEST_STATUS.SIMULATED, vehicle, warehouse.getCurrentTime());
         if (tempstacks.isEmpty()){
             return;
         }
@@ -168,19 +183,28 @@ public class BufferToStackSchedulingStrategy extends SchedulingStrategy {
         vehicle.addSimulatedRequest(simulatedRequest);
         vehicle.setNewOpenSimulatedRequest();
     }
+    // online: a request for the destination stack came in after others were already placed on it, so the relocation can take a box that
+    // is where it belongs. its request is opened again and carries the box back, which also keeps the relocations going until a box
+    // that doesn't belong there is moved
+    private void reopenPlacedRequest(Vehicle vehicle, Request relocation) {
+        Request placed = warehouse.getPlacedRequest(relocation.getBoxID(), relocation.getPickupLocation());
+        if (placed == null) return;
+        placed.setStatus(REQUEST_STATUS.INITIAL);
+        placed.setPickupLocation(relocation.getPlaceLocation());
+        placed.setAssignedVehicle(vehicle.getID());
+        vehicle.addOpenRequest(placed);
+    }
     private Request findNextRequest(Vehicle vehicle, Request currentRequest){
-        boolean hasBoxOnVehicle = currentRequest.getBoxID().equals(vehicle.getLastBox());
+        boolean hasBoxOnVehicle = currentRequest.getBoxID() == vehicle.getLastBox();
         boolean hasEnoughCapacity = vehicle.getCapacity() > vehicle.getCarriedBoxesCount();
         boolean isCurrentNodeSameAsPickupLocation = vehicle.getCurrentNode() == currentRequest.getPickupLocation();
 
         if (vehicle.getOpenRequests().size() > 1 && hasBoxOnVehicle && isCurrentNodeSameAsPickupLocation && hasEnoughCapacity){
-            Predicate<Request> checkfunction = x -> x.getPickupLocation().equals(currentRequest.getPickupLocation()) && !vehicle.hasBox(x.getBoxID());
-            List<Request> openRequestsSameSrc = vehicle.getOpenRequests().stream().filter(checkfunction).toList();
-            if (!openRequestsSameSrc.isEmpty()) return openRequestsSameSrc.get(0);
-            else {
-                Predicate<Request> checkfunction2 = x -> x.getPickupLocation().isBuffer() && !vehicle.hasBox(x.getBoxID());
-                List<Request> openRequestsDifferentSrc = vehicle.getOpenRequests().stream().filter(checkfunction2).toList();
-                if (!openRequestsDifferentSrc.isEmpty()) return openRequestsDifferentSrc.get(0);
+            for (Request request : vehicle.getOpenRequestsFrom(currentRequest.getPickupLocation())){
+                if (!vehicle.hasBox(request.getBoxID())) return request;
+            }
+            for (Request request : vehicle.getOpenRequests()){
+                if (request.getPickupLocation().isBuffer() && !vehicle.hasBox(request.getBoxID())) return request;
             }
         }
         return null;
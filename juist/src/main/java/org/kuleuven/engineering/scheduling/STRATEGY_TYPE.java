@@ -0,0 +1,7 @@
+package org.kuleuven.engineering.scheduling;
+
+public enum STRATEGY_TYPE{
+    TOP_BOX,
+    STACK_TO_BUFFER,
+    BUFFER_TO_STACK
+}
@@ -0,0 +1,441 @@
+package org.kuleuven.engineering.scheduling;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+import org.kuleuven.engineering.Warehouse;
+import org.kuleuven.engineering.graph.Graph;
+import org.kuleuven.engineering.graph.GraphNode;
+import org.kuleuven.engineering.types.Operation;
+import org.kuleuven.engineering.types.Request;
+import org.kuleuven.engineering.types.Stack;
+import org.kuleuven.engineering.types.Vehicle;
+
+// makespan and feasibility of a fixed sequence of operations per vehicle, without running the strategies.
+// the operations on one stack keep the order they have in the schedule (a priority per operation, increasing along every vehicle list),
+// apart from that every vehicle goes as early as possible: it leaves at the first tick at which it is free and the stack is no longer booked
+// when it gets there (same rule as RequestHandling). a pick up needs its box on top and a place a free spot, else the schedule is infeasible,
+// just like when the vehicles wait on each other in a circle.
+// every done operation is kept as an event with what it changed, after an edit only the events from the first one that could have
+// looked at an edited operation are undone and simulated again
+public class ScheduleEvaluator {
+    // the id only breaks ties between equal priorities
+    private record Step(Operation operation, double priority, long id) {}
+    private static final Comparator<Step> TURN = Comparator.comparingDouble(Step::priority).thenComparingLong(Step::id);
+    private record Event(int vehicle, Step step, double start, double end, double previousReady, int previousNode, double previousFreeAt, double previousMakespan) {}
+    // a step that was taken out of (or put in) a list since the last evaluation, the pending priorities are updated after the undo
+    private record Change(Step step, boolean added) {}
+    // the steps an edit took out of a list and how many it put in their place, to take the edit back
+    private record Edit(int vehicle, int from, List<Step> removed, int added) {}
+
+    private final Graph graph;
+    private final List<GraphNode> nodes;
+    private final int loadingSpeed;
+    private final List<List<Step>> steps;
+    private final Vehicle[] startVehicles;
+    private final double[][] travelFromStart;
+    private final int[] vehicleCapacity;
+
+    // per node, null for buffers: boxes from bottom to top, priorities of the operations that still have to happen there
+    private final List<Integer>[] contents;
+    private final TreeSet<Step>[] pending;
+    private final int[] stackCapacity;
+    private final double[] freeAt;
+    // destination node per request box (only stack destinations) and the number of those boxes that are not on it
+    private final HashMap<Integer, Integer> destinations = new HashMap<>();
+    private int misplaced = 0;
+
+    // per vehicle: next step, first tick it can leave, node it is at (-1 = start location), boxes on board, stack it waits for
+    private final int[] next;
+    private final double[] ready;
+    private final int[] at;
+    private final List<Integer>[] carried;
+    private final int[] blockedOn;
+
+    private final List<Event> events = new ArrayList<>();
+    // per vehicle the event of each of its done steps
+    private final List<List<Integer>> eventOfStep;
+    private final List<Change> changes = new ArrayList<>();
+    private final List<Edit> edits = new ArrayList<>();
+    private long nextStepID = 0;
+    private double makespan = 0;
+    private boolean feasible = false;
+    private int dirtyFrom = 0;
+    private long replayed = 0;
+
+    // the warehouse gives the starting state and must not be scheduled yet, the operations are those of a schedule of the same instance
+    // in the order they were done
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ScheduleEvaluator(Warehouse warehouse, List<Operation> schedule) {
+        this.graph = warehouse.getGraph();
+        this.nodes = graph.getNodes();
+        this.loadingSpeed = warehouse.getLoadingSpeed();
+
+        int vehicleCount = warehouse.getVehicles().size();
+        this.steps = new ArrayList<>(vehicleCount);
+        this.eventOfStep = new ArrayList<>(vehicleCount);
+        this.startVehicles = new Vehicle[vehicleCount];
+        this.travelFromStart = new double[vehicleCount][];
+        this.vehicleCapacity = new int[vehicleCount];
+        this.next = new int[vehicleCount];
+        this.ready = new double[vehicleCount];
+        this.at = new int[vehicleCount];
+        this.carried = new List[vehicleCount];
+        this.blockedOn = new int[vehicleCount];
+        for (Vehicle vehicle : warehouse.getVehicles()) {
+            int v = vehicle.getIndex();
+            steps.add(new ArrayList<>());
+            eventOfStep.add(new ArrayList<>());
+            // a copy, so the travel times from the start location stay right when the warehouse is scheduled afterwards
+            startVehicles[v] = vehicle.copy(Function.identity(), Function.identity());
+            travelFromStart[v] = new double[nodes.size()];
+            Arrays.fill(travelFromStart[v], -1);
+            vehicleCapacity[v] = vehicle.getCapacity();
+            at[v] = vehicle.getCurrentNode() == null ? -1 : vehicle.getCurrentNode().getIndex();
+            carried[v] = new ArrayList<>();
+        }
+
+        this.contents = new List[nodes.size()];
+        this.pending = new TreeSet[nodes.size()];
+        this.stackCapacity = new int[nodes.size()];
+        this.freeAt = new double[nodes.size()];
+        for (GraphNode node : nodes) {
+            if (node.getStorage() instanceof Stack stack) {
+                List<Integer> boxes = new ArrayList<>(stack.getCapacity());
+                for (int depth = stack.getBoxesSize() - 1; depth >= 0; depth--) {
+                    boxes.add(stack.peakAtDepth(depth));
+                }
+                contents[node.getIndex()] = boxes;
+                pending[node.getIndex()] = new TreeSet<>(TURN);
+                stackCapacity[node.getIndex()] = stack.getCapacity();
+            }
+        }
+        Arrays.fill(freeAt, -1);
+        for (int i = 0; i < schedule.size(); i++) {
+            Step step = new Step(schedule.get(i), i, nextStepID++);
+            steps.get(step.operation().vehicleIndex()).add(step);
+            addPending(step);
+        }
+        for (Request request : warehouse.getRequests()) {
+            if (!(request.getPlaceLocation().getStorage() instanceof Stack)) continue;
+            int dest = request.getPlaceLocation().getIndex();
+            destinations.put(request.getBoxID(), dest);
+            if (!contents[dest].contains(request.getBoxID())) misplaced++;
+        }
+    }
+
+    public int getOperationCount(int vehicle) {
+        return steps.get(vehicle).size();
+    }
+
+    public Operation getOperation(int vehicle, int index) {
+        return steps.get(vehicle).get(index).operation();
+    }
+
+    // the operations of all vehicles in the order the evaluation did them, at the times it found for them.
+    // ends with what is left when the schedule is infeasible, those keep the times they had
+    public List<Operation> getSchedule() {
+        evaluate();
+        List<Operation> schedule = new ArrayList<>();
+        for (Event event : events) {
+            schedule.add(event.step().operation().at(event.start(), event.end()));
+        }
+        for (int v = 0; v < steps.size(); v++) {
+            for (Step step : steps.get(v).subList(next[v], steps.get(v).size())) {
+                schedule.add(step.operation());
+            }
+        }
+        return schedule;
+    }
+
+    // -1 for an infeasible schedule, how far it got depends on the order the operations were evaluated in
+    public int getMakespan() {
+        evaluate();
+        return feasible ? (int) makespan : -1;
+    }
+
+    // every operation could be done and every request box ended on its destination stack
+    public boolean isFeasible() {
+        evaluate();
+        return feasible;
+    }
+
+    // number of operations simulated so far, over all evaluations
+    public long getReplayed() {
+        return replayed;
+    }
+
+    // edits, the schedule is simulated again the next time the makespan or feasibility is asked
+
+    public void swap(int vehicle, int i, int j) {
+        int from = Math.min(i, j), to = Math.max(i, j);
+        int[] order = new int[to - from + 1];
+        for (int k = 0; k < order.length; k++) {
+            order[k] = from + k;
+        }
+        order[0] = to;
+        order[order.length - 1] = from;
+        reorder(vehicle, from, order);
+    }
+
+    // the operations at positions order[0], order[1], .. go to positions from, from + 1, ..
+    // the priorities stay with the positions, so the reordered operations take the turns at their stacks the old ones had
+    public void reorder(int vehicle, int from, int[] order) {
+        List<Step> list = steps.get(vehicle);
+        List<Step> reordered = new ArrayList<>(order.length);
+        for (int k = 0; k < order.length; k++) {
+            reordered.add(new Step(list.get(order[k]).operation(), list.get(from + k).priority(), nextStepID++));
+        }
+        setSteps(vehicle, from, order.length, reordered);
+    }
+
+    // moves count operations (for example the pick up and place of one request) to another place in the same or another list,
+    // 'to' is a position in the target list after the operations were taken out. they get priorities between those of their new neighbours
+    public void move(int fromVehicle, int from, int count, int toVehicle, int to) {
+        List<Step> moved = new ArrayList<>(steps.get(fromVehicle).subList(from, from + count));
+        setSteps(fromVehicle, from, count, List.of());
+
+        List<Step> target = steps.get(toVehicle);
+        double first = moved.get(0).priority(), last = moved.get(count - 1).priority();
+        double low, high;
+        if (to > 0 && to < target.size()) {
+            low = target.get(to - 1).priority();
+            high = target.get(to).priority();
+        } else if (to > 0) {
+            low = target.get(to - 1).priority();
+            high = Math.max(low, last) + 1;
+        } else if (to < target.size()) {
+            high = target.get(to).priority();
+            low = Math.min(high, first) - 1;
+        } else {
+            low = first - 1;
+            high = last + 1;
+        }
+        List<Step> inserted = new ArrayList<>(count);
+        for (int k = 0; k < count; k++) {
+            inserted.add(new Step(moved.get(k).operation().byVehicle(toVehicle), low + (high - low) * (k + 1) / (count + 1), nextStepID++));
+        }
+        setSteps(toVehicle, to, 0, inserted);
+    }
+
+    // puts the box of a relocation (the place at placeIndex) on another stack, the pick up that takes it back from there changes with it
+    public void changeTempStack(int vehicle, int placeIndex, int nodeIndex) {
+        Step place = steps.get(vehicle).get(placeIndex);
+        setSteps(vehicle, placeIndex, 1, List.of(new Step(place.operation().atNode(nodeIndex), place.priority(), nextStepID++)));
+
+        // the first pick up of that box at that stack after the place
+        int pickupVehicle = -1, pickupIndex = -1;
+        for (int v = 0; v < steps.size(); v++) {
+            List<Step> list = steps.get(v);
+            for (int i = 0; i < list.size(); i++) {
+                Step step = list.get(i);
+                if (step.priority() <= place.priority() || !matchesPickup(step.operation(), place.operation())) continue;
+                if (pickupVehicle == -1 || TURN.compare(step, steps.get(pickupVehicle).get(pickupIndex)) < 0) {
+                    pickupVehicle = v;
+                    pickupIndex = i;
+                }
+                break;
+            }
+        }
+        if (pickupVehicle != -1) {
+            Step pickup = steps.get(pickupVehicle).get(pickupIndex);
+            setSteps(pickupVehicle, pickupIndex, 1, List.of(new Step(pickup.operation().atNode(nodeIndex), pickup.priority(), nextStepID++)));
+        }
+    }
+
+    private boolean matchesPickup(Operation operation, Operation place) {
+        return operation.pickup() && operation.nodeIndex() == place.nodeIndex() && operation.boxID() == place.boxID();
+    }
+
+    // the edits since the last accept stay, a search that keeps the change calls this so they can't be taken back anymore
+    public void accept() {
+        edits.clear();
+    }
+
+    // takes back every edit since the last accept, the schedule is then exactly the one that was accepted
+    public void reject() {
+        while (!edits.isEmpty()) {
+            Edit edit = edits.removeLast();
+            replaceSteps(edit.vehicle(), edit.from(), edit.added(), edit.removed());
+        }
+    }
+
+    private void setSteps(int vehicle, int from, int count, List<Step> replacement) {
+        edits.add(new Edit(vehicle, from, new ArrayList<>(steps.get(vehicle).subList(from, from + count)), replacement.size()));
+        replaceSteps(vehicle, from, count, replacement);
+    }
+
+    private void replaceSteps(int vehicle, int from, int count, List<Step> replacement) {
+        List<Step> range = steps.get(vehicle).subList(from, from + count);
+        for (Step step : range) {
+            changes.add(new Change(step, false));
+        }
+        range.clear();
+        for (Step step : replacement) {
+            changes.add(new Change(step, true));
+        }
+        range.addAll(replacement);
+        changed(vehicle, from);
+    }
+
+    // step 'index' of the vehicle and everything after it changed. it was first looked at right after the step before it was done
+    private void changed(int vehicle, int index) {
+        List<Integer> done = eventOfStep.get(vehicle);
+        int from;
+        if (index == 0) from = 0;
+        else if (index - 1 < done.size()) from = done.get(index - 1) + 1;
+        else from = events.size();
+        dirtyFrom = Math.min(dirtyFrom, from);
+    }
+
+    private void evaluate() {
+        if (dirtyFrom == Integer.MAX_VALUE) return;
+        // every changed step that was done is undone here, so after this the changes only touch steps that are pending
+        undoFrom(Math.min(dirtyFrom, events.size()));
+        for (Change change : changes) {
+            if (change.added()) addPending(change.step());
+            else removePending(change.step());
+        }
+        changes.clear();
+        simulate();
+        dirtyFrom = Integer.MAX_VALUE;
+    }
+
+    private void undoFrom(int from) {
+        for (int e = events.size() - 1; e >= from; e--) {
+            Event event = events.remove(e);
+            int v = event.vehicle();
+            Operation operation = event.step().operation();
+            int node = operation.nodeIndex();
+            eventOfStep.get(v).removeLast();
+            next[v]--;
+            ready[v] = event.previousReady();
+            at[v] = event.previousNode();
+            makespan = event.previousMakespan();
+            List<Integer> stack = contents[node];
+            if (operation.pickup()) {
+                carried[v].remove(Integer.valueOf(operation.boxID()));
+                if (stack != null) stack.add(operation.boxID());
+            } else {
+                carried[v].add(operation.boxID());
+                if (stack != null) stack.removeLast();
+            }
+            if (stack != null) {
+                freeAt[node] = event.previousFreeAt();
+                addPending(event.step());
+                if (isDestination(operation.boxID(), node)) misplaced += operation.pickup() ? -1 : 1;
+            }
+        }
+    }
+
+    private void simulate() {
+        // a waiting vehicle is just checked again, the stack it waited for is the same as when it got blocked
+        Arrays.fill(blockedOn, -1);
+        while (true) {
+            int vehicle = -1;
+            double departure = Double.POSITIVE_INFINITY;
+            for (int v = 0; v < steps.size(); v++) {
+                if (next[v] == steps.get(v).size() || blockedOn[v] != -1) continue;
+                double d = departure(v, steps.get(v).get(next[v]).operation().nodeIndex());
+                if (d < departure) {
+                    departure = d;
+                    vehicle = v;
+                }
+            }
+            if (vehicle == -1) {
+                feasible = misplaced == 0 && allDone();
+                return;
+            }
+
+            Step step = steps.get(vehicle).get(next[vehicle]);
+            Operation operation = step.operation();
+            int node = operation.nodeIndex();
+            List<Integer> stack = contents[node];
+            // not this operation's turn at the stack yet
+            if (stack != null && pending[node].first() != step) {
+                blockedOn[vehicle] = node;
+                continue;
+            }
+            // the stack and the vehicle only change by their own operations, which are in a fixed order, so this will never work
+            boolean possible = operation.pickup()
+                    ? carried[vehicle].size() < vehicleCapacity[vehicle] && (stack == null || !stack.isEmpty() && stack.getLast() == operation.boxID())
+                    : carried[vehicle].contains(operation.boxID()) && (stack == null || stack.size() < stackCapacity[node]);
+            if (!possible) {
+                feasible = false;
+                return;
+            }
+            execute(vehicle, step, departure);
+        }
+    }
+
+    private void execute(int vehicle, Step step, double departure) {
+        Operation operation = step.operation();
+        int node = operation.nodeIndex();
+        double arrival = departure + travelTime(vehicle, node);
+        double end = arrival + loadingSpeed;
+        List<Integer> stack = contents[node];
+        events.add(new Event(vehicle, step, departure, end, ready[vehicle], at[vehicle], freeAt[node], makespan));
+        eventOfStep.get(vehicle).add(events.size() - 1);
+        replayed++;
+
+        if (operation.pickup()) {
+            carried[vehicle].add(operation.boxID());
+            if (stack != null) stack.removeLast();
+        } else {
+            carried[vehicle].remove(Integer.valueOf(operation.boxID()));
+            if (stack != null) stack.add(operation.boxID());
+        }
+        if (stack != null) {
+            freeAt[node] = end;
+            removePending(step);
+            if (isDestination(operation.boxID(), node)) misplaced += operation.pickup() ? 1 : -1;
+            for (int v = 0; v < blockedOn.length; v++) {
+                if (blockedOn[v] == node) blockedOn[v] = -1;
+            }
+        }
+        // vehicles are available again at the first tick after the operation and leave one tick earlier (see handleRequest)
+        ready[vehicle] = Math.floor(end);
+        at[vehicle] = node;
+        next[vehicle]++;
+        makespan = Math.max(makespan, end);
+    }
+
+    // first tick at which the vehicle can leave and find the stack free when it gets there
+    private double departure(int vehicle, int node) {
+        if (contents[node] == null) return ready[vehicle];
+        return Math.max(ready[vehicle], Math.ceil(freeAt[node] - travelTime(vehicle, node)));
+    }
+
+    private double travelTime(int vehicle, int node) {
+        if (at[vehicle] != -1) return graph.getTravelTime(nodes.get(at[vehicle]), nodes.get(node));
+        if (travelFromStart[vehicle][node] < 0) travelFromStart[vehicle][node] = graph.getTravelTime(startVehicles[vehicle], nodes.get(node));
+        return travelFromStart[vehicle][node];
+    }
+
+    private void addPending(Step step) {
+        TreeSet<Step> turns = pending[step.operation().nodeIndex()];
+        if (turns != null) turns.add(step);
+    }
+
+    private void removePending(Step step) {
+        TreeSet<Step> turns = pending[step.operation().nodeIndex()];
+        if (turns != null) turns.remove(step);
+    }
+
+    private boolean isDestination(int boxID, int node) {
+        Integer dest = destinations.get(boxID);
+        return dest != null && dest == node;
+    }
+
+    private boolean allDone() {
+        for (int v = 0; v < steps.size(); v++) {
+            if (next[v] < steps.get(v).size()) return false;
+        }
+        return true;
+    }
+}
@@ -1,7 +1,27 @@
 package org.kuleuven.engineering.scheduling;
 
+import org.kuleuven.engineering.types.Request;
+import org.kuleuven.engineering.types.Vehicle;
+
 public abstract class SchedulingStrategy {
 
     public abstract void schedule();
     protected abstract void executeSchedulingLoop();
-} 
\ No newline at end of file
+
+    // go on with a loop that was paused (the requests are already distributed)
+    public void resume() {
+        executeSchedulingLoop();
+    }
+
+    // online: a request that comes in while this strategy is running, true if it was given to a vehicle.
+    // otherwise it waits in the warehouse request list for the next strategy
+    public boolean offer(Request request) {
+        return false;
+    }
+
+    // nothing pending, open or on board: the vehicle can take work from another one
+    protected boolean isIdle(Vehicle vehicle) {
+        return vehicle.getRequests().isEmpty() && vehicle.getOpenRequests().isEmpty() && vehicle.getOpenSimulatedRequests().isEmpty()
+                && vehicle.getCarriedBoxesCount() == 0 && vehicle.getCurrentRequestID() == -1;
+    }
+}
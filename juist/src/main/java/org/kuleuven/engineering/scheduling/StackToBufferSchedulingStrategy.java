@@ -9,6 +9,7 @@ import org.kuleuven.engineering.RequestHandling;
 import org.kuleuven.engineering.Warehouse;
 import org.kuleuven.engineering.types.Request;
 import org.kuleuven.engineering.types.Stack;
+import org.kuleuven.engineering.types.StackReservations;
 import org.kuleuven.engineering.types.Vehicle;
 
 public class StackToBufferSchedulingStrategy extends SchedulingStrategy {
@@ -41,6 +42,7 @@ public class StackToBufferSchedulingStrategy extends SchedulingStrategy {
         // Distribute requests over vehicles
         requestDistributor.distributeRequests(stackToBufferRequests,true);
         
+        initializeFirstGetAnother();
         // Execute the scheduling loop
         executeSchedulingLoop();
     }
@@ -49,45 +51,47 @@ public class StackToBufferSchedulingStrategy extends SchedulingStrategy {
     protected void executeSchedulingLoop() {
         boolean allRequestsDone = false;
         List<Vehicle> vehicles = warehouse.getVehicles();
-        HashMap<Integer, Integer> stackIsUsedUntil = warehouse.getStackIsUsedUntil();
+        StackReservations stackReservations = warehouse.getStackReservations();
         HashMap<Integer, Integer> waitForRequestFinish = warehouse.getWaitForRequestFinish();
-        initializeFirstGetAnother();
 
-        while (!allRequestsDone) {
-            int round = warehouse.getRound();
+        while (!allRequestsDone && !warehouse.shouldStop()) {
+            // only open requests of which the pickup stack is free, whatever position this strategy has
+            int round = 1;
             boolean[] firstGetAnother = warehouse.getFirstGetAnother();
             final double currentTime = warehouse.getCurrentTime();
 
             // remove all relocations that are done
-            warehouse.getActiveRelocations().removeIf(x -> x[3] < currentTime);
+            warehouse.getActiveRelocations().removeEndedBefore(currentTime);
 
             for (Vehicle vehicle : vehicles){
                 if (vehicle.isAvailable(currentTime)){
+                    // a vehicle without work takes over a stack of the busiest vehicle
+                    if (isIdle(vehicle)) requestDistributor.stealFor(vehicle, true, currentTime, stackReservations, firstGetAnother);
                     boolean hasSpace = vehicle.getCapacity() > vehicle.getCarriedBoxesCount();
                     boolean notWorkingOnRequest = vehicle.getCurrentRequestID() == -1;
                     boolean hasRequestAvailable = !vehicle.getRequests().isEmpty();
-                    boolean getAnotherFirst = firstGetAnother[vehicles.indexOf(vehicle)];
+                    boolean getAnotherFirst = firstGetAnother[vehicle.getIndex()];
                     boolean hasOpenRequests = !vehicle.getOpenRequests().isEmpty();
 
                     if (!getAnotherFirst && hasSpace && notWorkingOnRequest && hasRequestAvailable && !hasOpenRequests) {
-                        boolean success = vehicle.setNewOpenRequest(stackIsUsedUntil, currentTime, round, false);
+                        boolean success = vehicle.setNewOpenRequest(stackReservations, currentTime, round, false);
                         if (!success) continue; // can't open request because the stack it needs to go to is still used? wait
-                        Request request = vehicle.getOpenRequests().stream().filter(x -> {return x.getID() == vehicle.getCurrentRequestID();}).toList().get(0);
+                        Request request = vehicle.getOpenRequest(vehicle.getCurrentRequestID());
                         requestHandler.handleRequest(vehicle, request, currentTime > 0 ? currentTime-1 : 0, 0);
                         updateFirstGetAnother(vehicle);
                     }
 
                     else if (getAnotherFirst){
-                        boolean success = vehicle.setNewOpenRequest(stackIsUsedUntil, currentTime, round, true);
+                        boolean success = vehicle.setNewOpenRequest(stackReservations, currentTime, round, true);
                         if (!success) continue;
-                        Request request = vehicle.getOpenRequests().stream().filter(x -> {return x.getID() == vehicle.getCurrentRequestID();}).toList().get(0);
+                        Request request = vehicle.getOpenRequest(vehicle.getCurrentRequestID());
                         requestHandler.handleRequest(vehicle, request, currentTime > 0 ? currentTime-1 : 0, 0);
                         updateFirstGetAnother(vehicle);
                     }
 
                     else if (!notWorkingOnRequest && !getAnotherFirst && !vehicle.getOpenRequests().isEmpty()){
                         // go to buffer and finish open requests one by one
-                        Request request = vehicle.getOpenRequests().stream().filter(x -> {return x.getAssignedVehicle() == vehicle.getID();}).toList().get(0);
+                        Request request = vehicle.getOpenRequests().get(0);
                         requestHandler.handleRequest(vehicle, request, currentTime > 0 ? currentTime-1 : 0, 0);
                         // updateFirstGetAnother(vehicle, currentTime, round);
 
@@ -96,8 +100,7 @@ public class StackToBufferSchedulingStrategy extends SchedulingStrategy {
                             vehicle.closeRequest(request);
                             // if there is another vehicle waiting for the completion of this request
                             if (waitForRequestFinish.containsKey(request.getID())){
-                                int vehicleID = waitForRequestFinish.get(request.getID());
-                                Vehicle vehicleWaiting = vehicles.stream().filter(v -> v.getID() == vehicleID).toList().get(0);
+                                Vehicle vehicleWaiting = warehouse.getVehicle(waitForRequestFinish.get(request.getID()));
                                 vehicleWaiting.setUnavailableUntil(vehicle.getUnavailableUntil());
                                 waitForRequestFinish.remove(request.getID());
                             }
@@ -109,8 +112,34 @@ public class StackToBufferSchedulingStrategy extends SchedulingStrategy {
             // loop over vehicles and check if they all have an empty requestlist
             allRequestsDone = checkIfAllRequestsDone();
 
-            if (!allRequestsDone) warehouse.incrementCurrentTime();
+            if (!allRequestsDone) warehouse.advanceToNextEvent();
+        }
+    }
+
+    @Override
+    public boolean offer(Request request) {
+        if (request.getPickupLocation().isBuffer() || !request.getPlaceLocation().isBuffer()) return false;
+        Stack stack = (Stack) request.getPickupLocation().getStorage();
+        int depth = stack.getDepthOfBox(request.getBoxID());
+        if (depth == -1) return false;
+        Vehicle vehicle = requestDistributor.findVehicleFor(request, true);
+        // a vehicle that is digging deeper in this stack would relocate the box, then it waits for the next round
+        for (Request open : vehicle.getOpenRequests()) {
+            if (open.getPickupLocation() == request.getPickupLocation() && stack.getDepthOfBox(open.getBoxID()) > depth) return false;
+        }
+        // same order as in schedule(): the boxes of one stack from the top down
+        List<Request> pending = vehicle.getRequests();
+        int position = pending.size();
+        for (int i = 0; i < pending.size(); i++) {
+            if (pending.get(i).getPickupLocation() != request.getPickupLocation()) continue;
+            if (stack.getDepthOfBox(pending.get(i).getBoxID()) > depth) {
+                position = i;
+                break;
+            }
+            position = i + 1;
         }
+        vehicle.insertRequests(position, List.of(request));
+        return true;
     }
 
     private List<Request> findStackToBufferRequests() {
@@ -128,18 +157,18 @@ public class StackToBufferSchedulingStrategy extends SchedulingStrategy {
         }
     }
     private void updateFirstGetAnother(Vehicle vehicle){
-        List<Request> nextRequests = vehicle.getRequests().stream().toList();
+        List<Request> nextRequests = vehicle.getRequests();
         if (!nextRequests.isEmpty()){
             Request nextRequest = nextRequests.get(0);
             Stack targetStack = (Stack) nextRequest.getPickupLocation().getStorage();
             int neededCapacity = targetStack.getDepthOfBox(nextRequest.getBoxID());
             boolean hasEnoughCapacity = (vehicle.getCapacity() - vehicle.getCarriedBoxesCount()) >= neededCapacity;
-            boolean isStackUsed = warehouse.getStackIsUsedUntil().get(nextRequest.getPickupLocation().getStorage().getID()) <= warehouse.getCurrentTime();
+            boolean isStackUsed = warehouse.getStackReservations().busyUntil(targetStack) <= warehouse.getCurrentTime();
             boolean isBoxOnVehicle = vehicle.hasBox(nextRequest.getBoxID());
             boolean isCurrentNodeNotTargetNode = vehicle.getCurrentNode() != nextRequest.getPlaceLocation();
-            warehouse.getFirstGetAnother()[warehouse.getVehicles().indexOf(vehicle)] = isStackUsed && hasEnoughCapacity && isBoxOnVehicle && isCurrentNodeNotTargetNode;
+            warehouse.getFirstGetAnother()[vehicle.getIndex()] = isStackUsed && hasEnoughCapacity && isBoxOnVehicle && isCurrentNodeNotTargetNode;
         }
-        else warehouse.getFirstGetAnother()[warehouse.getVehicles().indexOf(vehicle)] = false;
+        else warehouse.getFirstGetAnother()[vehicle.getIndex()] = false;
     }
     private boolean checkIfAllRequestsDone(){
         boolean allRequestsDone = true;
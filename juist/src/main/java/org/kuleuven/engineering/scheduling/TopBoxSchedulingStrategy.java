@@ -10,6 +10,7 @@ import org.kuleuven.engineering.Warehouse;
 import org.kuleuven.engineering.types.IStorage;
 import org.kuleuven.engineering.types.Request;
 import org.kuleuven.engineering.types.Stack;
+import org.kuleuven.engineering.types.StackReservations;
 import org.kuleuven.engineering.types.Vehicle;
 
 public class TopBoxSchedulingStrategy extends SchedulingStrategy {
@@ -37,6 +38,8 @@ public class TopBoxSchedulingStrategy extends SchedulingStrategy {
         // distribute over vehicles
         requestDistributor.distributeRequests(requestListWithoutRelocation, true);
 
+        // keep track of whether the vehicle has to get another box first (initialize)
+        initializeFirstGetAnother();
         // finish requests 
         executeSchedulingLoop();
     }
@@ -45,46 +48,47 @@ public class TopBoxSchedulingStrategy extends SchedulingStrategy {
     protected void executeSchedulingLoop() {
         boolean allRequestsDone = false;
         List<Vehicle> vehicles = warehouse.getVehicles();
-        HashMap<Integer, Integer> stackIsUsedUntil = warehouse.getStackIsUsedUntil();
+        StackReservations stackReservations = warehouse.getStackReservations();
         HashMap<Integer, Integer> waitForRequestFinish = warehouse.getWaitForRequestFinish();
-        // keep track of whether the vehicle has to get another box first (initialize)
-        initializeFirstGetAnother();
 
-        while (!allRequestsDone) {
-            int round = warehouse.getRound();
+        while (!allRequestsDone && !warehouse.shouldStop()) {
+            // top box requests are opened in order, whatever position this strategy has
+            int round = 0;
             boolean[] firstGetAnother = warehouse.getFirstGetAnother();
             final double currentTime = warehouse.getCurrentTime();
 
             // remove all relocations that are done
-            warehouse.getActiveRelocations().removeIf(x -> x[3] < currentTime);
+            warehouse.getActiveRelocations().removeEndedBefore(currentTime);
 
             for (Vehicle vehicle : warehouse.getVehicles()){
                 if (vehicle.isAvailable(warehouse.getCurrentTime())){
+                    // a vehicle without work takes over a stack of the busiest vehicle
+                    if (isIdle(vehicle)) requestDistributor.stealFor(vehicle, true, currentTime, stackReservations, firstGetAnother);
                     boolean hasSpace = vehicle.getCapacity() > vehicle.getCarriedBoxesCount();
                     boolean notWorkingOnRequest = vehicle.getCurrentRequestID() == -1;
                     boolean hasRequestAvailable = !vehicle.getRequests().isEmpty();
-                    boolean getAnotherFirst = firstGetAnother[vehicles.indexOf(vehicle)];
+                    boolean getAnotherFirst = firstGetAnother[vehicle.getIndex()];
                     boolean hasOpenRequests = !vehicle.getOpenRequests().isEmpty();
 
                     if (!getAnotherFirst && hasSpace && notWorkingOnRequest && hasRequestAvailable && !hasOpenRequests) {
-                        boolean success = vehicle.setNewOpenRequest(stackIsUsedUntil, currentTime, round, false);
+                        boolean success = vehicle.setNewOpenRequest(stackReservations, currentTime, round, false);
                         if (!success) continue; // can't open request because the stack it needs to go to is still used? wait
-                        Request request = vehicle.getOpenRequests().stream().filter(x -> {return x.getID() == vehicle.getCurrentRequestID();}).toList().get(0);
+                        Request request = vehicle.getOpenRequest(vehicle.getCurrentRequestID());
                         requestHandler.handleRequest(vehicle, request, currentTime > 0 ? currentTime-1 : 0, 0);
                         updateFirstGetAnother(vehicle);
                     }
 
                     else if (getAnotherFirst){
-                        boolean success = vehicle.setNewOpenRequest(stackIsUsedUntil, currentTime, round, true);
+                        boolean success = vehicle.setNewOpenRequest(stackReservations, currentTime, round, true);
                         if (!success) continue;
-                        Request request = vehicle.getOpenRequests().stream().filter(x -> {return x.getID() == vehicle.getCurrentRequestID();}).toList().get(0);
+                        Request request = vehicle.getOpenRequest(vehicle.getCurrentRequestID());
                         requestHandler.handleRequest(vehicle, request, currentTime > 0 ? currentTime-1 : 0, 0);
                         updateFirstGetAnother(vehicle);
                     }
 
                     else if (!notWorkingOnRequest && !getAnotherFirst && !vehicle.getOpenRequests().isEmpty()){
                         // go to buffer and finish open requests one by one
-                        Request request = vehicle.getOpenRequests().stream().filter(x -> {return x.getAssignedVehicle() == vehicle.getID();}).toList().get(0);
+                        Request request = vehicle.getOpenRequests().get(0);
                         requestHandler.handleRequest(vehicle, request, currentTime > 0 ? currentTime-1 : 0, 0);
                         // updateFirstGetAnother(vehicle, currentTime, round);
 
@@ -93,8 +97,7 @@ public class TopBoxSchedulingStrategy extends SchedulingStrategy {
                             vehicle.closeRequest(request);
                             // if there is another vehicle waiting for the completion of this request
                             if (waitForRequestFinish.containsKey(request.getID())){
-                                int vehicleID = waitForRequestFinish.get(request.getID());
-                                Vehicle vehicleWaiting = vehicles.stream().filter(v -> v.getID() == vehicleID).toList().get(0);
+                                Vehicle vehicleWaiting = warehouse.getVehicle(waitForRequestFinish.get(request.getID()));
                                 vehicleWaiting.setUnavailableUntil(vehicle.getUnavailableUntil());
                                 waitForRequestFinish.remove(request.getID());
                             }
@@ -106,18 +109,23 @@ public class TopBoxSchedulingStrategy extends SchedulingStrategy {
             // loop over vehicles and check if they all have an empty requestlist
             allRequestsDone = checkIfAllRequestsDone();
 
-            if (!allRequestsDone) warehouse.incrementCurrentTime();
+            if (!allRequestsDone) warehouse.advanceToNextEvent();
         }
     }
 
     private List<Request> findTopBoxRequests() {
         List<Request> requestListWithoutRelocation = new ArrayList<>();
         List<Request> tempList = new ArrayList<>(warehouse.getRequests()); 
+        // first request of the list for every box
+        HashMap<Integer, Request> requestsByBox = new HashMap<>();
+        for (Request request : tempList) {
+            requestsByBox.putIfAbsent(request.getBoxID(), request);
+        }
         
         for (Request request : tempList) {
             IStorage storage = request.getPickupLocation().getStorage();
             if (!request.getPickupLocation().isBuffer() && 
-                storage.peek().equals(request.getBoxID()) && 
+                storage.peek() == request.getBoxID() && 
                 request.getPlaceLocation().isBuffer()) {
                 
                 requestListWithoutRelocation.add(request);
@@ -126,9 +134,9 @@ public class TopBoxSchedulingStrategy extends SchedulingStrategy {
                 // find if the box below also needs to be picked up
                 if (storage instanceof Stack stack) {
                     for (int i = 1; i < stack.getBoxesSize(); i++) {
-                        String boxIDBelow = stack.peakAtDepth(i);
+                        int boxIDBelow = stack.peakAtDepth(i);
                         // if that box also needs to be picked up, add that request
-                        if (!findAndAddRequest(tempList, boxIDBelow, requestListWithoutRelocation)) {
+                        if (!findAndAddRequest(requestsByBox, boxIDBelow, requestListWithoutRelocation)) {
                             break;
                         }
                     }
@@ -137,15 +145,12 @@ public class TopBoxSchedulingStrategy extends SchedulingStrategy {
         }
         return requestListWithoutRelocation;
     }
-    private boolean findAndAddRequest(List<Request> tempList, String boxID, List<Request> requestList) {
-        for (Request request : tempList) {
-            if (request.getBoxID().equals(boxID)) {
-                requestList.add(request);
-                warehouse.removeRequest(request);
-                return true;
-            }
-        }
-        return false;
+    private boolean findAndAddRequest(HashMap<Integer, Request> requestsByBox, int boxID, List<Request> requestList) {
+        Request request = requestsByBox.get(boxID);
+        if (request == null) return false;
+        requestList.add(request);
+        warehouse.removeRequest(request);
+        return true;
     }
     private List<Request> sortRequests(List<Request> requests) {
         requests.sort((r1, r2) -> {
@@ -164,7 +169,7 @@ public class TopBoxSchedulingStrategy extends SchedulingStrategy {
         }
     }
     private void updateFirstGetAnother(Vehicle vehicle){
-        warehouse.getFirstGetAnother()[warehouse.getVehicles().indexOf(vehicle)] = vehicle.getCapacity() > vehicle.getCarriedBoxesCount() && !vehicle.getRequests().isEmpty();
+        warehouse.getFirstGetAnother()[vehicle.getIndex()] = vehicle.getCapacity() > vehicle.getCarriedBoxesCount() && !vehicle.getRequests().isEmpty();
     }
     private boolean checkIfAllRequestsDone(){
         boolean allRequestsDone = true;
@@ -0,0 +1,61 @@
+package org.kuleuven.engineering.types;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+// relocations (box moved from one stack to a temp stack) that are still going on, indexed on (from, to) and expired by end time
+public class ActiveRelocations {
+    public record Relocation(int fromStackID, int toStackID, int requestID, double endTime) {}
+
+    private final HashMap<Long, List<Relocation>> byStackPair = new HashMap<>();
+    private final PriorityQueue<Relocation> byEndTime = new PriorityQueue<>((a, b) -> Double.compare(a.endTime(), b.endTime()));
+
+    public ActiveRelocations() {
+    }
+
+    // relocations are records, so only the index structures are copied
+    private ActiveRelocations(ActiveRelocations other) {
+        for (Map.Entry<Long, List<Relocation>> entry : other.byStackPair.entrySet()) {
+            byStackPair.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+        }
+        byEndTime.addAll(other.byEndTime);
+    }
+
+    public ActiveRelocations copy() {
+        return new ActiveRelocations(this);
+    }
+
+    private static long key(int fromStackID, int toStackID) {
+        return ((long) fromStackID << 32) | (toStackID & 0xFFFFFFFFL);
+    }
+
+    public void add(int fromStackID, int toStackID, int requestID, double endTime) {
+        Relocation relocation = new Relocation(fromStackID, toStackID, requestID, endTime);
+        byStackPair.computeIfAbsent(key(fromStackID, toStackID), k -> new ArrayList<>(1)).add(relocation);
+        byEndTime.add(relocation);
+    }
+
+    // the oldest relocation from one stack to the other, null if there is none
+    public Relocation find(int fromStackID, int toStackID) {
+        List<Relocation> relocations = byStackPair.get(key(fromStackID, toStackID));
+        return relocations == null ? null : relocations.get(0);
+    }
+
+    // removes every relocation that ended before the given time
+    public void removeEndedBefore(double time) {
+        while (!byEndTime.isEmpty() && byEndTime.peek().endTime() < time) {
+            Relocation relocation = byEndTime.poll();
+            long key = key(relocation.fromStackID(), relocation.toStackID());
+            List<Relocation> relocations = byStackPair.get(key);
+            relocations.remove(relocation);
+            if (relocations.isEmpty()) byStackPair.remove(key);
+        }
+    }
+
+    public int size() {
+        return byEndTime.size();
+    }
+}
@@ -0,0 +1,35 @@
+package org.kuleuven.engineering.types;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+// box names of one instance are numbered (0, 1, 2, ..) when they are read, the engine only works with the numbers and the operation log
+// looks the names up again. made by the DataReader and shared by the warehouse and its forks, online requests can add names later
+public final class BoxIds {
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[64];
+    private int count = 0;
+
+    // the number of a box, a new name gets the next number
+    public int of(String name) {
+        Integer id = ids.get(name);
+        if (id != null) return id;
+        return register(name);
+    }
+
+    public String name(int id) {
+        return names[id];
+    }
+
+    private synchronized int register(String name) {
+        Integer id = ids.get(name);
+        if (id != null) return id;
+        String[] current = names;
+        if (count == current.length) current = Arrays.copyOf(current, count * 2);
+        current[count] = name;
+        // the array is published before the number can be looked up
+        names = current;
+        ids.put(name, count);
+        return count++;
+    }
+}
@@ -0,0 +1,108 @@
+package org.kuleuven.engineering.types;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.kuleuven.engineering.graph.GraphNode;
+
+// per box number (BoxIds) the stack or vehicle that holds it now and, in a stack, its position from the bottom.
+// the stacks and vehicles of one warehouse keep it up to date on every addBox/removeBox
+public final class BoxLocations {
+    private static final int NOWHERE = -1;
+
+    // stack index, -2 - vehicle index for a vehicle, NOWHERE for a box on a buffer point or not seen yet
+    private int[] holders;
+    private int[] positions;
+    // the arrays are shared with a copy until one of them changes
+    private boolean shared = false;
+
+    public BoxLocations(List<GraphNode> nodes, List<Vehicle> vehicles) {
+        this.holders = new int[0];
+        this.positions = new int[0];
+        for (GraphNode node : nodes) {
+            if (node.getStorage() instanceof Stack stack) {
+                for (int position = 0; position < stack.getBoxesSize(); position++) {
+                    putInStack(stack.boxAt(position), stack, position);
+                }
+            }
+        }
+        for (Vehicle vehicle : vehicles) {
+            for (int box : vehicle.getCarriedBoxes()) {
+                putOnVehicle(box, vehicle);
+            }
+        }
+    }
+
+    private BoxLocations(BoxLocations other) {
+        this.holders = other.holders;
+        this.positions = other.positions;
+        this.shared = true;
+        other.shared = true;
+    }
+
+    public BoxLocations copy() {
+        return new BoxLocations(this);
+    }
+
+    private void own(int box) {
+        if (box >= holders.length) {
+            int length = Math.max(box + 1, 2 * holders.length);
+            int oldLength = holders.length;
+            holders = Arrays.copyOf(holders, length);
+            Arrays.fill(holders, oldLength, length, NOWHERE);
+            positions = Arrays.copyOf(positions, length);
+            shared = false;
+        } else if (shared) {
+            holders = holders.clone();
+            positions = positions.clone();
+            shared = false;
+        }
+    }
+
+    void putInStack(int box, Stack stack, int position) {
+        own(box);
+        holders[box] = holder(stack);
+        positions[box] = position;
+    }
+
+    void putOnVehicle(int box, Vehicle vehicle) {
+        own(box);
+        holders[box] = holder(vehicle);
+    }
+
+    // only when the box is still there: a stack gets a box that is placed before the vehicle lets go of it
+    void remove(int box, int holder) {
+        if (getHolder(box) != holder) return;
+        own(box);
+        holders[box] = NOWHERE;
+    }
+
+    private int getHolder(int box) {
+        return box < 0 || box >= holders.length ? NOWHERE : holders[box];
+    }
+
+    // stack index of the stack that holds the box, -1 if it is in none
+    public int getStackIndex(int box) {
+        int holder = getHolder(box);
+        return holder >= 0 ? holder : -1;
+    }
+
+    // vehicle index of the vehicle that carries the box, -1 if it is on none
+    public int getVehicleIndex(int box) {
+        int holder = getHolder(box);
+        return holder <= -2 ? -2 - holder : -1;
+    }
+
+    // position from the bottom of the stack that holds the box
+    public int getPosition(int box) {
+        return positions[box];
+    }
+
+    static int holder(Stack stack) {
+        return stack.getIndex();
+    }
+
+    static int holder(Vehicle vehicle) {
+        return -2 - vehicle.getIndex();
+    }
+}
@@ -1,19 +1,28 @@
 package org.kuleuven.engineering.types;
 
-import java.util.Stack;
+import java.util.EmptyStackException;
 
 import org.json.JSONObject;
 
 public class Bufferpoint implements IStorage {
     private int ID;
     private String name;
-    private Stack<String> boxes = new Stack<>();
 
     public Bufferpoint(JSONObject object) {
         ID = object.getInt("ID");
         name = object.getString("name");
     }
 
+    private Bufferpoint(Bufferpoint other) {
+        this.ID = other.ID;
+        this.name = other.name;
+    }
+
+    @Override
+    public Bufferpoint copy() {
+        return new Bufferpoint(this);
+    }
+
     @Override
     public int getID() {
         return ID;
@@ -26,18 +35,19 @@ public class Bufferpoint implements IStorage {
 
 
     @Override
-    public String addBox(String box) {
+    public int addBox(int box) {
         return box;
     }
 
+    // a buffer point keeps no boxes, the requests from a buffer point give the box
     @Override
-    public String removeBox() {
-        return boxes.pop();
+    public int removeBox() {
+        throw new EmptyStackException();
     }
 
     @Override
-    public String peek() {
-        return boxes.peek();
+    public int peek() {
+        throw new EmptyStackException();
     }
 
     @Override
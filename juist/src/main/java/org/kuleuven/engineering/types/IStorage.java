@@ -3,9 +3,12 @@ package org.kuleuven.engineering.types;
 public interface IStorage {
     int getID();
     String getName();
-    String addBox(String box);
-    String removeBox();
-    String peek();
+    // boxes are box numbers (BoxIds)
+    int addBox(int box);
+    int removeBox();
+    int peek();
     boolean isFull();
     int getFreeSpace();
+    // independent copy for a forked warehouse
+    IStorage copy();
 }
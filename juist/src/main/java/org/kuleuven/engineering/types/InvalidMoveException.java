@@ -0,0 +1,11 @@
+package org.kuleuven.engineering.types;
+
+// a move the state doesn't allow (a box that isn't there, a full vehicle, a stack that is booked), the schedule that led to it is unusable.
+// the improvement searches drop the changed schedule when it is thrown
+public class InvalidMoveException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public InvalidMoveException(String message) {
+        super(message);
+    }
+}
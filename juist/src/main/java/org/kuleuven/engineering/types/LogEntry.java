@@ -0,0 +1,20 @@
+package org.kuleuven.engineering.types;
+
+// one line of the operation log, the box name is only looked up when the line is written
+public record LogEntry(String vehicleName, int startX, int startY, int startTime, int endX, int endY, int endTime, int boxID, String operation) {
+
+    // the same line later in time, for operations that were scheduled after other ones
+    public LogEntry shifted(int offset) {
+        return new LogEntry(vehicleName, startX, startY, startTime + offset, endX, endY, endTime + offset, boxID, operation);
+    }
+
+    // the same line at other times, for a schedule that was evaluated again
+    public LogEntry at(int otherStartTime, int otherEndTime) {
+        return new LogEntry(vehicleName, startX, startY, otherStartTime, endX, endY, otherEndTime, boxID, operation);
+    }
+
+    // the line as it is written, with the box name from the instance the box number belongs to
+    public String format(BoxIds boxIds) {
+        return vehicleName + ";" + startX + ";" + startY + ";" + startTime + ";" + endX + ";" + endY + ";" + endTime + ";" + boxIds.name(boxID) + ";" + operation;
+    }
+}
@@ -0,0 +1,20 @@
+package org.kuleuven.engineering.types;
+
+// one pick up or place of a schedule. the node is the graph node index, so it means the same node in a forked warehouse, the box is its number (BoxIds)
+public record Operation(int vehicleIndex, int nodeIndex, int boxID, boolean pickup, double startTime, double endTime) {
+
+    // the same operation at another node, for moving a relocation to another temp stack
+    public Operation atNode(int otherNodeIndex) {
+        return new Operation(vehicleIndex, otherNodeIndex, boxID, pickup, startTime, endTime);
+    }
+
+    // the same operation at other times, for a schedule that was evaluated again
+    public Operation at(double otherStartTime, double otherEndTime) {
+        return new Operation(vehicleIndex, nodeIndex, boxID, pickup, otherStartTime, otherEndTime);
+    }
+
+    // the same operation done by another vehicle
+    public Operation byVehicle(int otherVehicleIndex) {
+        return new Operation(otherVehicleIndex, nodeIndex, boxID, pickup, startTime, endTime);
+    }
+}
@@ -4,28 +4,48 @@ import org.kuleuven.engineering.graph.GraphNode;
 
 public class Request {
     private final int ID;
+    private final int index;
     private GraphNode pickupLocation;
     private GraphNode placeLocation;
-    private final String boxID;
+    // box number (BoxIds)
+    private final int boxID;
     private int assignedVehicle = -1;
     private REQUEST_STATUS status = REQUEST_STATUS.INITIAL;
 
-    public Request(GraphNode pickup, GraphNode place, int ID, String boxID) {
+    public Request(GraphNode pickup, GraphNode place, int ID, int boxID) {
+        this(pickup, place, ID, boxID, -1);
+    }
+
+    public Request(GraphNode pickup, GraphNode place, int ID, int boxID, int index) {
         this.ID = ID;
+        this.index = index;
         this.boxID = boxID;
         this.pickupLocation = pickup;
         this.placeLocation = place;
     }
 
+    // same request with its state, for a forked warehouse in which the nodes are copies
+    public Request copy(GraphNode pickup, GraphNode place) {
+        Request request = new Request(pickup, place, ID, boxID, index);
+        request.assignedVehicle = assignedVehicle;
+        request.status = status;
+        return request;
+    }
+
     public GraphNode getPickupLocation() {
         return pickupLocation;
     }
 
+    // online: the box was relocated before the request got its turn
+    public void setPickupLocation(GraphNode pickupLocation) {
+        this.pickupLocation = pickupLocation;
+    }
+
     public GraphNode getPlaceLocation() {
         return placeLocation;
     }
 
-    public String getBoxID() {
+    public int getBoxID() {
         return boxID;
     }
 
@@ -33,6 +53,11 @@ public class Request {
         return ID;
     }
 
+    // dense index of a request read from the instance, -1 for simulated requests
+    public int getIndex() {
+        return index;
+    }
+
     public int getAssignedVehicle() {
         return assignedVehicle;
     }
@@ -0,0 +1,83 @@
+package org.kuleuven.engineering.types;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
+// append-only list for the logs of a warehouse and its forks. what was logged before a fork is frozen in segments that both sides
+// share and each side appends to its own tail, so a fork doesn't copy the log. a frozen segment is merged with the one before it
+// as long as that one is not longer, so a log that was forked many times is still only a few segments
+public final class SharedLog<T> extends AbstractList<T> {
+    private record Segment<T>(Segment<T> previous, int start, List<T> entries) {
+        int end() {
+            return start + entries.size();
+        }
+    }
+
+    // null as long as nothing was frozen
+    private Segment<T> frozen;
+    private List<T> tail = new ArrayList<>();
+
+    public SharedLog() {}
+
+    private SharedLog(Segment<T> frozen) {
+        this.frozen = frozen;
+    }
+
+    // the same entries for the fork, from now on both sides append separately
+    public SharedLog<T> fork() {
+        freeze();
+        return new SharedLog<>(frozen);
+    }
+
+    private void freeze() {
+        if (tail.isEmpty()) return;
+        Segment<T> previous = frozen;
+        List<T> entries = tail;
+        while (previous != null && previous.entries().size() <= entries.size()) {
+            List<T> merged = new ArrayList<>(previous.entries().size() + entries.size());
+            merged.addAll(previous.entries());
+            merged.addAll(entries);
+            entries = merged;
+            previous = previous.previous();
+        }
+        frozen = new Segment<>(previous, previous == null ? 0 : previous.end(), entries);
+        tail = new ArrayList<>();
+    }
+
+    private int frozenSize() {
+        return frozen == null ? 0 : frozen.end();
+    }
+
+    @Override
+    public boolean add(T entry) {
+        return tail.add(entry);
+    }
+
+    @Override
+    public T get(int index) {
+        Objects.checkIndex(index, size());
+        int frozenSize = frozenSize();
+        if (index >= frozenSize) return tail.get(index - frozenSize);
+        Segment<T> segment = frozen;
+        while (index < segment.start()) segment = segment.previous();
+        return segment.entries().get(index - segment.start());
+    }
+
+    @Override
+    public int size() {
+        return frozenSize() + tail.size();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        List<List<T>> parts = new ArrayList<>();
+        parts.add(tail);
+        for (Segment<T> segment = frozen; segment != null; segment = segment.previous()) parts.add(segment.entries());
+        Collections.reverse(parts);
+        return parts.stream().flatMap(List::stream).iterator();
+    }
+}
@@ -1,23 +1,56 @@
 package org.kuleuven.engineering.types;
 
+import java.util.Arrays;
+import java.util.EmptyStackException;
+
 import org.json.JSONArray;
 import org.json.JSONObject;
 
 public class Stack implements IStorage {
     private int ID;
+    private final int index;
     private String name;
     private final int capacity;
-    private final java.util.Stack<String> boxes;
+    // box numbers (BoxIds) from the bottom up, only the first size are in the stack
+    private int[] boxes;
+    private int size;
+    // the boxes are shared with a copy of this stack until one of them changes
+    private boolean sharedBoxes = false;
+    // index of the warehouse this stack is in, null before it is in one
+    private BoxLocations boxLocations;
 
-    public Stack(JSONObject object, int capacity) {
+    public Stack(JSONObject object, int capacity, int index, BoxIds boxIds) {
         ID = object.getInt("ID");
+        this.index = index;
         name = object.getString("name");
         this.capacity = capacity;
-        this.boxes = new java.util.Stack<>();
         JSONArray boxArray = object.getJSONArray("boxes");
+        this.boxes = new int[Math.max(capacity, boxArray.length())];
         for (int i = 0; i < boxArray.length(); i++) {
-            String boxName = boxArray.getString(i);
-            this.boxes.add(boxName);
+            this.boxes[size++] = boxIds.of(boxArray.getString(i));
+        }
+    }
+
+    private Stack(Stack other) {
+        this.ID = other.ID;
+        this.index = other.index;
+        this.name = other.name;
+        this.capacity = other.capacity;
+        this.boxes = other.boxes;
+        this.size = other.size;
+        this.sharedBoxes = true;
+        other.sharedBoxes = true;
+    }
+
+    @Override
+    public Stack copy() {
+        return new Stack(this);
+    }
+
+    private void ownBoxes() {
+        if (sharedBoxes) {
+            boxes = boxes.clone();
+            sharedBoxes = false;
         }
     }
 
@@ -26,33 +59,52 @@ public class Stack implements IStorage {
         return ID;
     }
 
+    // dense index over all stacks of the warehouse (0..stacks-1)
+    public int getIndex() {
+        return index;
+    }
+
     @Override
     public String getName() {
         return name;
     }
 
+    public void setBoxLocations(BoxLocations boxLocations) {
+        this.boxLocations = boxLocations;
+    }
+
     @Override
-    public String addBox(String box) {
-        return boxes.push(box);
+    public int addBox(int box) {
+        ownBoxes();
+        // only an instance that starts over capacity can get here
+        if (size == boxes.length) boxes = Arrays.copyOf(boxes, size + 1);
+        if (boxLocations != null) boxLocations.putInStack(box, this, size);
+        boxes[size++] = box;
+        return box;
     }
 
     @Override
-    public String removeBox() {
-        return boxes.pop();
+    public int removeBox() {
+        if (size == 0) throw new EmptyStackException();
+        ownBoxes();
+        int box = boxes[--size];
+        if (boxLocations != null) boxLocations.remove(box, BoxLocations.holder(this));
+        return box;
     }
 
     @Override
-    public String peek() {
-        return boxes.peek();
+    public int peek() {
+        if (size == 0) throw new EmptyStackException();
+        return boxes[size - 1];
     }
 
     public boolean isFull() {
-        return this.boxes.size() >= this.capacity;
+        return size >= this.capacity;
     }
 
     @Override
     public int getFreeSpace() {
-        return capacity - boxes.size();
+        return capacity - size;
     }
 
     public int getCapacity() {
@@ -60,22 +112,29 @@ public class Stack implements IStorage {
     }
 
     public int getBoxesSize() {
-        return boxes.size();
+        return size;
     }
     
-    public String peakAtDepth(int depth) {
+    public int peakAtDepth(int depth) {
         //return id of box at depth
-        if (depth > boxes.size()) {
-            return "";
+        if (depth > size) {
+            return -1;
         }
-        return boxes.get(boxes.size() - depth - 1);
+        return boxes[size - depth - 1];
     }
 
-    public int getDepthOfBox(String boxID) {
-        return boxes.search(boxID);
+    int boxAt(int position) {
+        return boxes[position];
     }
 
-    public Object getBoxes() {
-        return boxes.clone();
+    // 1 for the top box, -1 if the box is not in this stack
+    public int getDepthOfBox(int box) {
+        if (boxLocations != null) {
+            return boxLocations.getStackIndex(box) == index ? size - boxLocations.getPosition(box) : -1;
+        }
+        for (int i = size - 1; i >= 0; i--) {
+            if (boxes[i] == box) return size - i;
+        }
+        return -1;
     }
 }
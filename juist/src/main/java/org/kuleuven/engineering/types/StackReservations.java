@@ -0,0 +1,34 @@
+package org.kuleuven.engineering.types;
+
+import java.util.Arrays;
+
+// per stack (by stack index) the time until which a vehicle works at that stack, bookings on a stack follow each other in time
+public class StackReservations {
+    private final double[] busyUntil;
+
+    public StackReservations(int stackCount) {
+        this.busyUntil = new double[stackCount];
+        Arrays.fill(busyUntil, -1);
+    }
+
+    private StackReservations(StackReservations other) {
+        this.busyUntil = other.busyUntil.clone();
+    }
+
+    public StackReservations copy() {
+        return new StackReservations(this);
+    }
+
+    // end of the last booking, -1 if the stack was never booked
+    public double busyUntil(Stack stack) {
+        return busyUntil[stack.getIndex()];
+    }
+
+    public void book(Stack stack, double start, double end) {
+        int s = stack.getIndex();
+        if (start < busyUntil[s]) {
+            throw new InvalidMoveException("Stack " + stack.getName() + " is still booked until " + busyUntil[s] + ", can't book it from " + start);
+        }
+        busyUntil[s] = end;
+    }
+}
@@ -1,7 +1,9 @@
 package org.kuleuven.engineering.types;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.function.Function;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -9,6 +11,7 @@ import org.kuleuven.engineering.graph.GraphNode;
 
 public class Vehicle {
     private final int ID;
+    private final int index;
     private final String name;
     private final int capacity;
     private Location location;
@@ -16,14 +19,21 @@ public class Vehicle {
     public GraphNode currentNode = null;
     private List<Request> requests;
     private final List<Request> openRequests;
+    // indexes on the requests above: pending requests by place node index, open requests by ID and by pickup node index
+    private final HashMap<Integer, List<Request>> requestsByDest;
+    private final HashMap<Integer, Request> openRequestsByID;
+    private final HashMap<Integer, List<Request>> openRequestsBySrc;
     private final List<Request> simulatedRequests;
     private final List<Request> openSimulatedRequests;
     private final List<Integer> myStackIDs;
     private double unavailableUntil = -1;
-    private final ArrayList<String> carriedBoxes;
+    // box numbers (BoxIds) in the order they were picked up, only the first carriedBoxesCount are on the vehicle
+    private final int[] carriedBoxes;
     private int carriedBoxesCount;
+    // index of the warehouse this vehicle is in, null before it is in one
+    private BoxLocations boxLocations;
 
-    public Vehicle(JSONObject object) {
+    public Vehicle(JSONObject object, int index) {
         try{
             this.location = new Location(object.getInt("xCoordinate"), object.getInt("yCoordinate"));
             //this.location = new Location(object.getInt("x"), object.getInt("y"));
@@ -31,21 +41,70 @@ public class Vehicle {
             this.location = new Location(object.getInt("x"), object.getInt("y"));
         }
         ID = object.getInt("ID");
+        this.index = index;
         name = object.getString("name");
         capacity = object.getInt("capacity");
         this.carriedBoxesCount = 0;
-        this.carriedBoxes = new ArrayList<>();
+        this.carriedBoxes = new int[capacity];
         this.requests = new ArrayList<>();
         this.openRequests = new ArrayList<>();
+        this.requestsByDest = new HashMap<>();
+        this.openRequestsByID = new HashMap<>();
+        this.openRequestsBySrc = new HashMap<>();
         this.simulatedRequests = new ArrayList<>();
         this.openSimulatedRequests = new ArrayList<>();
         this.myStackIDs = new ArrayList<>();
     }
 
+    // copy for a forked warehouse, nodes and requests are replaced by their copies
+    private Vehicle(Vehicle other, Function<GraphNode, GraphNode> nodeCopy, Function<Request, Request> requestCopy) {
+        this.ID = other.ID;
+        this.index = other.index;
+        this.name = other.name;
+        this.capacity = other.capacity;
+        this.location = other.location;
+        this.currentRequestID = other.currentRequestID;
+        this.currentNode = other.currentNode == null ? null : nodeCopy.apply(other.currentNode);
+        this.unavailableUntil = other.unavailableUntil;
+        this.carriedBoxes = other.carriedBoxes.clone();
+        this.carriedBoxesCount = other.carriedBoxesCount;
+        this.myStackIDs = new ArrayList<>(other.myStackIDs);
+        this.requests = new ArrayList<>(other.requests.size());
+        this.openRequests = new ArrayList<>(other.openRequests.size());
+        this.requestsByDest = new HashMap<>();
+        this.openRequestsByID = new HashMap<>();
+        this.openRequestsBySrc = new HashMap<>();
+        this.simulatedRequests = new ArrayList<>(other.simulatedRequests.size());
+        this.openSimulatedRequests = new ArrayList<>(other.openSimulatedRequests.size());
+        for (Request request : other.requests) {
+            Request copy = requestCopy.apply(request);
+            requests.add(copy);
+            requestsByDest.computeIfAbsent(copy.getPlaceLocation().getIndex(), k -> new ArrayList<>()).add(copy);
+        }
+        for (Request request : other.openRequests) {
+            addOpenRequest(requestCopy.apply(request));
+        }
+        for (Request request : other.simulatedRequests) {
+            simulatedRequests.add(requestCopy.apply(request));
+        }
+        for (Request request : other.openSimulatedRequests) {
+            openSimulatedRequests.add(requestCopy.apply(request));
+        }
+    }
+
+    public Vehicle copy(Function<GraphNode, GraphNode> nodeCopy, Function<Request, Request> requestCopy) {
+        return new Vehicle(this, nodeCopy, requestCopy);
+    }
+
     public int getID(){
         return ID;
     }
     
+    // dense index of the vehicle in the warehouse vehicle list
+    public int getIndex(){
+        return index;
+    }
+
     public String getName(){
         return name;
     }
@@ -92,31 +151,48 @@ public class Vehicle {
     }
     
     // Getters and setters
-    public boolean removeBox(String boxId){
-        if (carriedBoxes.contains(boxId)){
-            carriedBoxesCount--;
-            return carriedBoxes.remove(boxId);
+    public void setBoxLocations(BoxLocations boxLocations){
+        this.boxLocations = boxLocations;
+    }
+
+    public boolean removeBox(int boxId){
+        for (int i = 0; i < carriedBoxesCount; i++){
+            if (carriedBoxes[i] == boxId){
+                System.arraycopy(carriedBoxes, i + 1, carriedBoxes, i, carriedBoxesCount - i - 1);
+                carriedBoxesCount--;
+                if (boxLocations != null) boxLocations.remove(boxId, BoxLocations.holder(this));
+                return true;
+            }
         }
-        throw new RuntimeException("Box not found in vehicle at time of removal");
+        throw new InvalidMoveException("Box not found in vehicle at time of removal");
     }
     
-    public void addBox(String boxId){
-        this.carriedBoxes.add(boxId);
-        this.carriedBoxesCount++;
-        if (carriedBoxesCount > capacity){
-            throw new RuntimeException("Vehicle capacity exceeded");
+    public void addBox(int boxId){
+        if (carriedBoxesCount == capacity){
+            throw new InvalidMoveException("Vehicle capacity exceeded");
         }
+        this.carriedBoxes[carriedBoxesCount++] = boxId;
+        if (boxLocations != null) boxLocations.putOnVehicle(boxId, this);
     }
 
-    public boolean hasBox(String boxId){
-        return carriedBoxes.contains(boxId);
+    public boolean hasBox(int boxId){
+        if (boxLocations != null) return boxLocations.getVehicleIndex(boxId) == index;
+        for (int i = 0; i < carriedBoxesCount; i++){
+            if (carriedBoxes[i] == boxId) return true;
+        }
+        return false;
+    }
+
+    public int[] getCarriedBoxes(){
+        return Arrays.copyOf(carriedBoxes, carriedBoxesCount);
     }
     
-    public String getLastBox(){
-        if (carriedBoxes.isEmpty()){
-            return null;
+    // -1 if the vehicle carries nothing
+    public int getLastBox(){
+        if (carriedBoxesCount == 0){
+            return -1;
         }
-        return carriedBoxes.get(carriedBoxes.size() - 1);
+        return carriedBoxes[carriedBoxesCount - 1];
     }
     
     public void resetStackIDs(){
@@ -125,10 +201,9 @@ public class Vehicle {
 
     public void setRequests(List<Request> requests){
         this.requests = requests;
+        requestsByDest.clear();
         for (Request request : requests){
-            if (request.getPickupLocation().getStorage() instanceof Stack && request.getPlaceLocation().getStorage() instanceof Stack){
-                System.out.println("Stack to stack request");
-            }
+            requestsByDest.computeIfAbsent(request.getPlaceLocation().getIndex(), k -> new ArrayList<>()).add(request);
             if (request.getPickupLocation().getStorage() instanceof Stack && !myStackIDs.contains(request.getPickupLocation().getStorage().getID())){
                 myStackIDs.add(request.getPickupLocation().getStorage().getID());
             }
@@ -146,11 +221,11 @@ public class Vehicle {
         return requests;
     }
     
-    public boolean setNewOpenRequest( HashMap<Integer, Integer> unavailableStacks, double currentTime, int round, boolean doorFirstGetAnother){
+    public boolean setNewOpenRequest(StackReservations stackReservations, double currentTime, int round, boolean doorFirstGetAnother){
         Request currentRequest = null;
         if (doorFirstGetAnother){
             Request firstRequest = requests.get(0);
-            if (unavailableStacks.get(firstRequest.getPickupLocation().getStorage().getID()) < currentTime) {
+            if (stackReservations.busyUntil((Stack) firstRequest.getPickupLocation().getStorage()) < currentTime) {
                 currentRequest = firstRequest;
             }
         }
@@ -160,18 +235,18 @@ public class Vehicle {
                     currentRequest = request;
                     break;
                 }
-                if (round == 1 && unavailableStacks.get(request.getPickupLocation().getStorage().getID()) < currentTime){
+                if (round == 1 && stackReservations.busyUntil((Stack) request.getPickupLocation().getStorage()) < currentTime){
                     currentRequest = request;
                     break;
                 }
-                if (round == 2 && unavailableStacks.get(request.getPlaceLocation().getStorage().getID()) < currentTime){
+                if (round == 2 && stackReservations.busyUntil((Stack) request.getPlaceLocation().getStorage()) < currentTime){
                     currentRequest = request;
                     break;
                 }
             }
         }
         if (currentRequest != null){
-            requests.remove(currentRequest);
+            removeRequest(currentRequest);
             addOpenRequest(currentRequest);
             currentRequestID = currentRequest.getID();
             currentRequest.setAssignedVehicle(ID);
@@ -180,16 +255,107 @@ public class Vehicle {
         return false;
     }
 
+    private void removeRequest(Request request){
+        requests.remove(request);
+        List<Request> sameDest = requestsByDest.get(request.getPlaceLocation().getIndex());
+        sameDest.remove(request);
+        if (sameDest.isEmpty()) requestsByDest.remove(request.getPlaceLocation().getIndex());
+    }
+
+    // take pending requests away from this vehicle (improvement search, work stealing), stacks it has no more requests for are no longer its own
+    public void removeRequests(List<Request> toRemove){
+        for (Request request : toRemove){
+            removeRequest(request);
+        }
+        for (Request request : toRemove){
+            releaseStackID(request.getPickupLocation());
+            releaseStackID(request.getPlaceLocation());
+        }
+    }
+
+    private void releaseStackID(GraphNode node){
+        if (!(node.getStorage() instanceof Stack)) return;
+        for (Request request : requests){
+            if (request.getPickupLocation() == node || request.getPlaceLocation() == node) return;
+        }
+        for (Request request : openRequests){
+            if (request.getPickupLocation() == node || request.getPlaceLocation() == node) return;
+        }
+        myStackIDs.remove(Integer.valueOf(node.getStorage().getID()));
+    }
+
+    // put pending requests in at the given position of the pending list, their stacks become stacks of this vehicle
+    public void insertRequests(int position, List<Request> toInsert){
+        requests.addAll(position, toInsert);
+        requestsByDest.clear();
+        for (Request request : requests){
+            requestsByDest.computeIfAbsent(request.getPlaceLocation().getIndex(), k -> new ArrayList<>()).add(request);
+        }
+        for (Request request : toInsert){
+            if (request.getPickupLocation().getStorage() instanceof Stack && !myStackIDs.contains(request.getPickupLocation().getStorage().getID())){
+                myStackIDs.add(request.getPickupLocation().getStorage().getID());
+            }
+            if (request.getPlaceLocation().getStorage() instanceof Stack && !myStackIDs.contains(request.getPlaceLocation().getStorage().getID())){
+                myStackIDs.add(request.getPlaceLocation().getStorage().getID());
+            }
+        }
+    }
+
+    // opens every pending request that goes to the same place as the first pending request
+    public void openRequestsWithSameDest(){
+        GraphNode dest = requests.get(0).getPlaceLocation();
+        List<Request> sameDest = requestsByDest.remove(dest.getIndex());
+        requests.removeIf(x -> x.getPlaceLocation().getIndex() == dest.getIndex());
+        for (Request request : sameDest){
+            addOpenRequest(request);
+        }
+    }
+
     public List<Request> getOpenRequests(){
         return openRequests;
     }
+
+    public Request getOpenRequest(int requestID){
+        return openRequestsByID.get(requestID);
+    }
+
+    // open requests with the given pickup node, in the order they were opened
+    public List<Request> getOpenRequestsFrom(GraphNode src){
+        return openRequestsBySrc.getOrDefault(src.getIndex(), List.of());
+    }
+
+    // first open request of which the box is on the vehicle, null if there is none
+    public Request getFirstOpenRequestWithCarriedBox(){
+        for (Request request : openRequests){
+            if (hasBox(request.getBoxID())) return request;
+        }
+        return null;
+    }
     
     public void addOpenRequest(Request request){
         this.openRequests.add(request);
+        openRequestsByID.put(request.getID(), request);
+        openRequestsBySrc.computeIfAbsent(request.getPickupLocation().getIndex(), k -> new ArrayList<>()).add(request);
+    }
+
+    // the box of an open request was moved by another request, the request was given the new pickup location
+    public void pickupMoved(Request request, GraphNode oldPickup){
+        List<Request> sameSrc = openRequestsBySrc.get(oldPickup.getIndex());
+        if (sameSrc == null || !sameSrc.remove(request)) return;
+        if (sameSrc.isEmpty()) openRequestsBySrc.remove(oldPickup.getIndex());
+        openRequestsBySrc.computeIfAbsent(request.getPickupLocation().getIndex(), k -> new ArrayList<>()).add(request);
+    }
+
+    private void removeOpenRequest(Request request){
+        openRequests.remove(request);
+        openRequestsByID.remove(request.getID());
+        List<Request> sameSrc = openRequestsBySrc.get(request.getPickupLocation().getIndex());
+        sameSrc.remove(request);
+        if (sameSrc.isEmpty()) openRequestsBySrc.remove(request.getPickupLocation().getIndex());
     }
     
     public void closeRequest(Request request){
-        openRequests.remove(request);
+        removeOpenRequest(request);
         if (!openRequests.isEmpty()){
             currentRequestID = openRequests.get(0).getID();
         }
@@ -199,7 +365,7 @@ public class Vehicle {
     }
     
     public void closeRequestLastRound(Request request, int nextRequestID){
-        openRequests.remove(request);
+        removeOpenRequest(request);
         currentRequestID = nextRequestID;
     }
     